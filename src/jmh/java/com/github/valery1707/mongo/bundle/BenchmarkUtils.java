@@ -0,0 +1,52 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+final class BenchmarkUtils {
+    private BenchmarkUtils() {
+    }
+
+    static String entryName(int index) {
+        return String.format("mongo/Platform%03d-V3_4_10-B64.tgz", index);
+    }
+
+    /**
+     * Jar with {@code entries} entries of random (incompressible like real archives) content.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    static Path writeJar(Path jar, int entries, int entrySize, int method) throws IOException {
+        Random random = new Random(entries);
+        byte[] content = new byte[entrySize];
+        try (
+                OutputStream stream = Files.newOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(stream);
+        ) {
+            for (int i = 0; i < entries; i++) {
+                random.nextBytes(content);
+                zip.putNextEntry(entry(entryName(i), content, method));
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    static ZipEntry entry(String name, byte[] content, int method) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+        return entry;
+    }
+}
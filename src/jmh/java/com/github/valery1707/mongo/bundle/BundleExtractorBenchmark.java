@@ -0,0 +1,105 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * End-to-end {@link BundleExtractor#download}: bundle on classpath, with and without extraction cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleExtractorBenchmark {
+    @Param({"16"})
+    public int entries;
+
+    @Param({"8388608"})
+    public int entrySize;
+
+    @Param({"0", "1073741824"})
+    public long cacheSize;
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution distribution = new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64);
+
+    private Path root;
+    private ClassLoader contextClassLoader;
+    private URLClassLoader bundleClassLoader;
+    private BundleExtractor extractor;
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("bundle-benchmark");
+        Path jar = root.resolve("bundle.jar");
+        Random random = new Random(entries);
+        byte[] content = new byte[entrySize];
+        try (
+                OutputStream stream = Files.newOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(stream);
+        ) {
+            //Requested entry is last one
+            for (int i = 0; i < entries; i++) {
+                random.nextBytes(content);
+                String name = i < entries - 1 ? BenchmarkUtils.entryName(i) : BundleExtractor.entryName(config, distribution);
+                zip.putNextEntry(BenchmarkUtils.entry(name, content, ZipEntry.STORED));
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+        bundleClassLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null);
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+        extractor = new BundleExtractor(false, new BundleCache(root.resolve("cache"), cacheSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        bundleClassLoader.close();
+        FileUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        File file = extractor.download(config, distribution);
+        try {
+            return file.length();
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+}
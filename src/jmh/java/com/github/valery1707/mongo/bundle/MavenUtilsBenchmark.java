@@ -0,0 +1,98 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+
+/**
+ * Library lookup in generated local repository with many snapshot builds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MavenUtilsBenchmark {
+    private static final String GROUP = "com.github.valery1707";
+    private static final String ARTIFACT = "mongo-bundle";
+
+    private static final DateTimeFormatter LAST_UPDATED = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    @Param({"100"})
+    public int builds;
+
+    @Param({"true", "false"})
+    public boolean metadata;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("maven-benchmark");
+        Path artifact = root.resolve("com").resolve("github").resolve("valery1707").resolve(ARTIFACT);
+        for (int i = 0; i < builds; i++) {
+            String version = String.format("3.4.10-%010x-1", i);
+            Path dir = Files.createDirectories(artifact.resolve(version));
+            for (String suffix : new String[]{".jar", ".pom", "-linux-64.jar", "-sources.jar"}) {
+                Path file = Files.createFile(dir.resolve(ARTIFACT + "-" + version + suffix));
+                Files.setLastModifiedTime(file, FileTime.fromMillis(1_500_000_000_000L + i * 1000L));
+            }
+            if (metadata) {
+                Files.write(dir.resolve("maven-metadata-local.xml"), (""
+                        + "<metadata><versioning>"
+                        + "<lastUpdated>" + LAST_UPDATED.format(Instant.ofEpochSecond(1_500_000_000L + i * 60L)) + "</lastUpdated>"
+                        + "</versioning></metadata>"
+                ).getBytes(UTF_8));
+            }
+        }
+        MavenUtils.repository.set(singletonList(root));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MavenUtils.repository.set(null);
+        MavenUtils.resolved.clear();
+        FileUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Optional<Path> snapshotCold() throws IOException {
+        MavenUtils.resolved.clear();
+        return MavenUtils.findLibrary(GROUP, ARTIFACT, "3.4.10", ".jar", true);
+    }
+
+    @Benchmark
+    public Optional<Path> snapshotMemoized() throws IOException {
+        return MavenUtils.findLibrary(GROUP, ARTIFACT, "3.4.10", ".jar", true);
+    }
+
+    @Benchmark
+    public Optional<Path> directCold() throws IOException {
+        MavenUtils.resolved.clear();
+        return MavenUtils.findLibrary(GROUP, ARTIFACT, String.format("3.4.10-%010x-1", builds - 1), ".jar", false);
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Queries over large settings file: value near the end forces parse of whole document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlUtilsBenchmark {
+    private static final List<String> PATHS = Arrays.asList(
+            "/settings/localRepository",
+            "/settings/offline",
+            "/settings/mirrors/mirror/url"
+    );
+
+    @Param({"5000"})
+    public int servers;
+
+    private Path settings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<settings>\n  <servers>\n");
+        for (int i = 0; i < servers; i++) {
+            xml.append("    <server><id>server").append(i).append("</id><username>user</username><password>secret</password></server>\n");
+        }
+        xml.append("  </servers>\n");
+        xml.append("  <mirrors><mirror><id>mirror</id><url>http://localhost/repo</url></mirror></mirrors>\n");
+        xml.append("  <offline>false</offline>\n");
+        xml.append("  <localRepository>/path/to/local/repo</localRepository>\n");
+        xml.append("</settings>\n");
+        settings = Files.createTempFile("settings", ".xml");
+        Files.write(settings, xml.toString().getBytes(UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(settings);
+    }
+
+    @Benchmark
+    public Optional<String> single() throws IOException {
+        return XmlUtils.extractFromXml(settings, "/settings/localRepository");
+    }
+
+    @Benchmark
+    public Map<String, String> multiple() throws IOException {
+        return XmlUtils.extractFromXml(settings, PATHS);
+    }
+}
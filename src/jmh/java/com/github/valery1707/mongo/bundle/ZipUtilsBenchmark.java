@@ -0,0 +1,94 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Extraction of single entry from synthetic multi-entry bundle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipUtilsBenchmark {
+    @Param({"16"})
+    public int entries;
+
+    @Param({"8388608"})
+    public int entrySize;
+
+    @Param({"first", "middle", "last"})
+    public String position;
+
+    @Param({"STORED", "DEFLATED"})
+    public String method;
+
+    private Path root;
+    private Path jar;
+    private Path target;
+    private String name;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("zip-benchmark");
+        jar = BenchmarkUtils.writeJar(root.resolve("bundle.jar"), entries, entrySize, "STORED".equals(method) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        target = root.resolve("target");
+        int index = "first".equals(position) ? 0 : "middle".equals(position) ? entries / 2 : entries - 1;
+        name = BenchmarkUtils.entryName(index);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Path randomAccess() throws IOException {
+        ZipUtils.extract(jar, singletonMap(name, target));
+        return target;
+    }
+
+    @Benchmark
+    public Path sequentialScan() throws IOException {
+        ZipUtils.extract(jar, entry -> entry
+                .map(ZipEntry::getName)
+                .filter(name::equals)
+                .map(__ -> target)
+        );
+        return target;
+    }
+
+    @Benchmark
+    public Optional<Path> stream() throws IOException {
+        try (
+                InputStream input = ZipUtils.open(jar, name)
+        ) {
+            Files.copy(input, target, REPLACE_EXISTING);
+        }
+        return Optional.of(target);
+    }
+}
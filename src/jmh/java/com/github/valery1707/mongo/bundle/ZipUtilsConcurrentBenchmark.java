@@ -0,0 +1,69 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+/**
+ * Extraction of every entry of synthetic bundle: one by one vs concurrently.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipUtilsConcurrentBenchmark {
+    @Param({"16"})
+    public int entries;
+
+    @Param({"8388608"})
+    public int entrySize;
+
+    @Param({"STORED", "DEFLATED"})
+    public String method;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path root;
+    private Path jar;
+    private final Map<String, Path> targets = new LinkedHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("zip-benchmark");
+        jar = BenchmarkUtils.writeJar(root.resolve("bundle.jar"), entries, entrySize, "STORED".equals(method) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+        for (int i = 0; i < entries; i++) {
+            targets.put(BenchmarkUtils.entryName(i), root.resolve("target" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public Map<String, ZipUtils.Extracted> concurrent() throws IOException {
+        return ZipUtils.extractConcurrently(jar, targets, parallelism);
+    }
+}
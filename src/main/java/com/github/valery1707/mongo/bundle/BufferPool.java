@@ -0,0 +1,103 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of direct buffers for in-memory extraction: direct memory is freed only by GC,
+ * so buffers of released streams are reused by next extractions instead.
+ */
+final class BufferPool {
+    private static final int LIMIT = 4;
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * @return cleared buffer with capacity of at least {@code size} and limit equal to {@code size}
+     */
+    static ByteBuffer acquire(int size) {
+        //Polled buffer is owned by single caller, too small ones are put back
+        List<ByteBuffer> small = new ArrayList<>(LIMIT);
+        ByteBuffer found = null;
+        for (int i = 0; i < LIMIT && found == null; i++) {
+            ByteBuffer buffer = BUFFERS.poll();
+            if (buffer == null) {
+                break;
+            }
+            if (buffer.capacity() >= size) {
+                found = buffer;
+            } else {
+                small.add(buffer);
+            }
+        }
+        BUFFERS.addAll(small);
+        if (found == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        found.clear().limit(size);
+        return found;
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && BUFFERS.size() < LIMIT) {
+            buffer.clear();
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Stream over remaining bytes of buffer, buffer is released to pool on close.
+     */
+    static InputStream stream(ByteBuffer buffer) {
+        return new InputStream() {
+            private boolean closed;
+
+            @Override
+            public int read() {
+                return !closed && buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (closed || !buffer.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) {
+                if (closed || n <= 0) {
+                    return 0;
+                }
+                int count = (int) Math.min(n, buffer.remaining());
+                buffer.position(buffer.position() + count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return closed ? 0 : buffer.remaining();
+            }
+
+            @Override
+            public synchronized void close() {
+                if (!closed) {
+                    closed = true;
+                    release(buffer);
+                }
+            }
+        };
+    }
+}
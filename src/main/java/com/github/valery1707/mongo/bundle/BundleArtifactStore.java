@@ -0,0 +1,216 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.config.store.FileSet;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.config.store.IPackageResolver;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.extract.CommonsArchiveEntryAdapter;
+import de.flapdoodle.embed.process.extract.ExtractedFileSets;
+import de.flapdoodle.embed.process.extract.FilesToExtract;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.extract.IExtractionMatch;
+import de.flapdoodle.embed.process.extract.ITempNaming;
+import de.flapdoodle.embed.process.extract.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.io.directories.FixedPath;
+import de.flapdoodle.embed.process.io.directories.IDirectory;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Artifact store which unpacks executables of distribution straight from archive inside bundle jar,
+ * without intermediate copy of archive in temp directory and in flapdoodle's artifact store.
+ */
+@SuppressWarnings("UnnecessarySemicolon")
+public class BundleArtifactStore implements IArtifactStore {
+    public static final String PROPERTY_LINK = "mongo.bundle.link";
+
+    private final IDownloadConfig downloadConfig;
+    private final IDirectory extractDir;
+    private final ITempNaming executableNaming;
+    private final BundleExtractor bundle;
+    private final boolean link;
+
+    /**
+     * @param link keep extracted files in cache of {@code bundle} and hard-link them into extraction directory
+     *             (copy when link is not possible), so warm start does not write executables at all
+     */
+    public BundleArtifactStore(IDownloadConfig downloadConfig, IDirectory extractDir, ITempNaming executableNaming, BundleExtractor bundle, boolean link) {
+        this.downloadConfig = downloadConfig;
+        this.extractDir = extractDir;
+        this.executableNaming = executableNaming;
+        this.bundle = bundle;
+        this.link = link;
+    }
+
+    public BundleArtifactStore(IDownloadConfig downloadConfig, IDirectory extractDir, ITempNaming executableNaming, BundleExtractor bundle) {
+        this(downloadConfig, extractDir, executableNaming, bundle, Boolean.getBoolean(PROPERTY_LINK));
+    }
+
+    public BundleArtifactStore(IDownloadConfig downloadConfig, IDirectory extractDir, ITempNaming executableNaming) {
+        this(downloadConfig, extractDir, executableNaming, new BundleExtractor());
+    }
+
+    @Override
+    public boolean checkDistribution(Distribution distribution) throws IOException {
+        return bundle.isAvailable(downloadConfig, distribution);
+    }
+
+    @Override
+    public IExtractedFileSet extractFileSet(Distribution distribution) throws IOException {
+        FileSet fileSet = downloadConfig.getPackageResolver().getFileSet(distribution);
+        FilesToExtract toExtract = new FilesToExtract(extractDir, executableNaming, fileSet);
+        if (link && bundle.getCache().isEnabled()) {
+            return linkFileSet(distribution, fileSet, toExtract);
+        }
+        return extract(distribution, toExtract);
+    }
+
+    private IExtractedFileSet extract(Distribution distribution, FilesToExtract toExtract) throws IOException {
+        IPackageResolver resolver = downloadConfig.getPackageResolver();
+        ImmutableExtractedFileSet.Builder builder = ImmutableExtractedFileSet
+                .builder(toExtract.baseDir())
+                .baseDirIsGenerated(toExtract.baseDirIsGenerated());
+        List<File> written = new ArrayList<>();
+        Optional<BundleManifest> manifest = bundle.manifest(downloadConfig, distribution);
+        if (manifest.isPresent()) {
+            //Multi-version bundle: files are taken straight from blobs, archive is not needed at all
+            try {
+                for (BundleManifest.Entry entry : manifest.get().getEntries()) {
+                    if (toExtract.nothingLeft()) {
+                        break;
+                    }
+                    IExtractionMatch match = toExtract.find(entry);
+                    if (match != null) {
+                        try (
+                                InputStream input = manifest.get().open(entry);
+                        ) {
+                            File file = match.write(input, entry.getSize());
+                            written.add(file);
+                            builder.file(match.type(), file);
+                        }
+                    }
+                }
+                if (!toExtract.nothingLeft()) {
+                    throw new IOException("Files " + toExtract.files() + " not found in manifest of " + distribution);
+                }
+            } catch (IOException | RuntimeException e) {
+                written.forEach(File::delete);
+                throw e;
+            }
+            return builder.build();
+        }
+        try (
+                InputStream input = bundle.open(downloadConfig, distribution);
+                ArchiveInputStream archive = archive(resolver.getArchiveType(distribution), new BufferedInputStream(input));
+        ) {
+            ArchiveEntry entry;
+            while (!toExtract.nothingLeft() && (entry = archive.getNextEntry()) != null) {
+                IExtractionMatch match = toExtract.find(new CommonsArchiveEntryAdapter(entry));
+                if (match != null) {
+                    if (!archive.canReadEntryData(entry)) {
+                        throw new IOException("Can not read " + entry.getName() + " from archive of " + distribution);
+                    }
+                    File file = match.write(archive, entry.getSize());
+                    written.add(file);
+                    builder.file(match.type(), file);
+                }
+            }
+            if (!toExtract.nothingLeft()) {
+                throw new IOException("Files " + toExtract.files() + " not found in archive of " + distribution);
+            }
+        } catch (IOException | RuntimeException e) {
+            written.forEach(File::delete);
+            throw e;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Every file of set is cached separately, on miss whole set is extracted once into staging directory.
+     */
+    private IExtractedFileSet linkFileSet(Distribution distribution, FileSet fileSet, FilesToExtract toExtract) throws IOException {
+        BundleCache cache = bundle.getCache();
+        String sourceKey = bundle.cacheKey(downloadConfig, distribution);
+        ImmutableExtractedFileSet.Builder builder = ImmutableExtractedFileSet
+                .builder(toExtract.baseDir())
+                .baseDirIsGenerated(toExtract.baseDirIsGenerated());
+        List<File> written = new ArrayList<>();
+        Path[] staging = {null};
+        try {
+            for (FileSet.Entry entry : fileSet.entries()) {
+                String fileName = FilesToExtract.fileName(entry);
+                File file = new File(toExtract.baseDir(), entry.type() == FileType.Executable
+                        ? FilesToExtract.executableName(executableNaming, entry)
+                        : fileName
+                );
+                cache.use(
+                        BundleCache.key(sourceKey, 0, 0, entry.destination(), entry.type().name()),
+                        fileName,
+                        target -> {
+                            if (staging[0] == null) {
+                                //Not inside cache root: eviction treats every directory there as cache entry
+                                staging[0] = Files.createTempDirectory(toExtract.baseDir().toPath(), "staging");
+                                //Staged files keep plain names, so they can be found by entry
+                                extract(distribution, new FilesToExtract(new FixedPath(staging[0].toString()), (prefix, postfix) -> postfix, fileSet));
+                            }
+                            Files.move(staging[0].resolve(fileName), target, REPLACE_EXISTING);
+                        },
+                        //Entry is locked while it is linked or copied
+                        cached -> {
+                            FileUtils.linkOrCopy(cached, file.toPath());
+                            return written.add(file);
+                        }
+                );
+                if (entry.type() == FileType.Executable && !file.canExecute() && !file.setExecutable(true)) {
+                    throw new IOException("Fail to make executable " + file.getAbsolutePath());
+                }
+                builder.file(entry.type(), file);
+            }
+        } catch (IOException | RuntimeException e) {
+            written.forEach(File::delete);
+            throw e;
+        } finally {
+            if (staging[0] != null) {
+                FileUtils.deleteRecursively(staging[0]);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void removeFileSet(Distribution distribution, IExtractedFileSet files) {
+        ExtractedFileSets.delete(files);
+    }
+
+    static ArchiveInputStream archive(ArchiveType type, InputStream input) throws IOException {
+        switch (type) {
+            case TGZ:
+                return new TarArchiveInputStream(new GzipCompressorInputStream(input));
+            case TBZ2:
+                return new TarArchiveInputStream(new BZip2CompressorInputStream(input));
+            case ZIP:
+                return new ZipArchiveInputStream(input);
+            default:
+                throw new IOException("Unsupported archive type: " + type);
+        }
+    }
+}
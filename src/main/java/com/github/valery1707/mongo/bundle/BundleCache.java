@@ -0,0 +1,407 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.io.directories.PropertyOrPlatformTempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Persistent cache of entries extracted from bundle jars, shared between JVMs.
+ * Every entry lives in own directory named by content key, directory modification time is used as LRU marker.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BundleCache {
+    public static final String PROPERTY_DIR = "mongo.bundle.cache.dir";
+    public static final String PROPERTY_SIZE = "mongo.bundle.cache.size";
+    public static final long DEFAULT_SIZE = 2L * 1024 * 1024 * 1024;
+
+    private final Path root;
+    private final long maxSize;
+
+    /**
+     * @param root    cache directory
+     * @param maxSize size cap in bytes, cache is disabled when it is not positive
+     */
+    public BundleCache(Path root, long maxSize) {
+        this.root = root;
+        this.maxSize = maxSize;
+    }
+
+    public static BundleCache defaultInstance() {
+        String dir = System.getProperty(PROPERTY_DIR);
+        Path root = dir != null
+                ? Paths.get(dir)
+                : PropertyOrPlatformTempDir.defaultInstance().asFile().toPath().resolve("mongo-bundle-cache");
+        return new BundleCache(root, Long.getLong(PROPERTY_SIZE, DEFAULT_SIZE));
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    @FunctionalInterface
+    public interface Extractor {
+        void extract(Path target) throws IOException;
+    }
+
+    public static String key(Path jar, String entry, String version) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        return key(
+                jar.normalize().toAbsolutePath().toString(),
+                attributes.size(), attributes.lastModifiedTime().toMillis(),
+                entry, version
+        );
+    }
+
+    public static String key(String source, long size, long lastModified, String entry, String version) {
+        String raw = String.join("\n", source, Long.toString(size), Long.toString(lastModified), entry, version);
+        return Digests.hex(Digests.create("SHA-1").digest(raw.getBytes(UTF_8)));
+    }
+
+    /**
+     * Extractor which verifies written content.
+     */
+    @FunctionalInterface
+    public interface VerifyingExtractor {
+        /**
+         * @return verified SHA-256 of written content in hex
+         */
+        String extract(Path target) throws IOException;
+    }
+
+    /**
+     * Action with cached file, which is run while entry is locked.
+     */
+    @FunctionalInterface
+    public interface Action<T> {
+        T apply(Path file) throws IOException;
+    }
+
+    /**
+     * Run {@code action} with cached file for key, file is extracted with {@code extractor} on miss.
+     * Extraction is guarded with file lock, so concurrent processes extract entry only once and others reuse result.
+     * Action is run while entry is locked, so other processes can not evict it meanwhile.
+     * File is owned by cache: action must copy it before any modification.
+     */
+    public <T> T use(String key, String fileName, Extractor extractor, Action<T> action) throws IOException {
+        return use(key, fileName, target -> {
+            extractor.extract(target);
+            return null;
+        }, false, action);
+    }
+
+    /**
+     * Same as {@link #use(String, String, Extractor, Action)}, but verified SHA-256 is stored next to file as
+     * {@code <fileName>.sha256} before file itself appears, so later hits are trusted without re-hashing.
+     * Entry without stored digest is extracted again.
+     */
+    public <T> T useVerified(String key, String fileName, VerifyingExtractor extractor, Action<T> action) throws IOException {
+        return use(key, fileName, extractor, true, action);
+    }
+
+    /**
+     * Return cached file for key or extract it with {@code extractor} on miss.
+     * Returned file is not locked and can be evicted by other process at any moment:
+     * callers which read it must handle its absence or use {@link #use} instead.
+     */
+    public Path get(String key, String fileName, Extractor extractor) throws IOException {
+        return use(key, fileName, extractor, file -> file);
+    }
+
+    /**
+     * Same as {@link #get(String, String, Extractor)} with verification of {@link #useVerified}.
+     */
+    public Path getVerified(String key, String fileName, VerifyingExtractor extractor) throws IOException {
+        return useVerified(key, fileName, extractor, file -> file);
+    }
+
+    /**
+     * @return verified SHA-256 of cached file, stored by {@link #getVerified}
+     */
+    public static Optional<String> digest(Path file) throws IOException {
+        Path checksum = checksumOf(file);
+        if (!FileUtils.isReadableFile(checksum)) {
+            return Optional.empty();
+        }
+        return Digests.readChecksum(Files.newInputStream(checksum));
+    }
+
+    private static Path checksumOf(Path file) {
+        return file.resolveSibling(file.getFileName().toString() + Digests.SHA_256_SUFFIX);
+    }
+
+    private static boolean isReady(Path file, boolean verified) {
+        return FileUtils.isReadableFile(file) && (!verified || FileUtils.isReadableFile(checksumOf(file)));
+    }
+
+    @SuppressWarnings("try")
+    private <T> T use(String key, String fileName, VerifyingExtractor extractor, boolean verified, Action<T> action) throws IOException {
+        Path dir = root.resolve(key);
+        Path file = dir.resolve(fileName);
+        Path lockFile = root.resolve(key + LOCK_SUFFIX);
+        if (isReady(file, verified)) {
+            try (
+                    Lock ignored = lock(lockFile, true, true)
+            ) {
+                //Entry could be evicted by another process before we got lock
+                if (isReady(file, verified)) {
+                    touch(dir);
+                    BundleMetrics.cache(key, true);
+                    return action.apply(file);
+                }
+            }
+        }
+        Files.createDirectories(root);
+        long lockStart = System.nanoTime();
+        T result;
+        try (
+                Lock ignored = lock(lockFile, true)
+        ) {
+            BundleMetrics.phase(BundleListener.Phase.LOCK_WAIT, key, lockStart);
+            //Another process could extract entry while we wait for lock
+            if (isReady(file, verified)) {
+                touch(dir);
+                BundleMetrics.cache(key, true);
+                return action.apply(file);
+            }
+            BundleMetrics.cache(key, false);
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, fileName, ".tmp");
+            try {
+                String digest = extractor.extract(temp);
+                if (verified) {
+                    if (digest == null) {
+                        throw new IllegalStateException("Extractor of " + key + " returned no digest");
+                    }
+                    Path checksum = checksumOf(file);
+                    Path checksumTemp = Files.createTempFile(dir, fileName, Digests.SHA_256_SUFFIX + ".tmp");
+                    try {
+                        Files.write(checksumTemp, Digests.checksumLine(digest, fileName).getBytes(UTF_8));
+                        Files.move(checksumTemp, checksum, ATOMIC_MOVE, REPLACE_EXISTING);
+                    } finally {
+                        Files.deleteIfExists(checksumTemp);
+                    }
+                }
+                Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            touch(dir);
+            result = action.apply(file);
+        }
+        evict(dir);
+        return result;
+    }
+
+    private static final String LOCK_SUFFIX = ".lock";
+    /**
+     * File locks are held by whole JVM, so threads of one JVM must be serialized before taking them, even shared ones.
+     * Local lock is removed from map when it has no more users.
+     */
+    private static final Map<Path, Local> LOCALS = new ConcurrentHashMap<>();
+
+    private static final class Local {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * Threads which hold or wait for lock, guarded by {@link #LOCALS}.
+         */
+        private int users;
+    }
+
+    private static Local acquireLocal(Path path) {
+        return LOCALS.compute(path, (__, local) -> {
+            Local result = local != null ? local : new Local();
+            result.users++;
+            return result;
+        });
+    }
+
+    private static void releaseLocal(Path path) {
+        LOCALS.computeIfPresent(path, (__, local) -> --local.users > 0 ? local : null);
+    }
+
+    static int localCount() {
+        return LOCALS.size();
+    }
+
+    static final class Lock implements AutoCloseable {
+        private final Path path;
+        private final Local local;
+        private final FileChannel channel;
+
+        private Lock(Path path, Local local, FileChannel channel) {
+            this.path = path;
+            this.local = local;
+            this.channel = channel;
+        }
+
+        /**
+         * Remove lock file, processes which already wait for it will take lock again on new file.
+         */
+        void delete() throws IOException {
+            channel.write(ByteBuffer.wrap(DELETED), 0);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                //Opened file could be not removable: lock stays usable
+                channel.truncate(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                //Releases file lock too
+                channel.close();
+            } finally {
+                local.lock.unlock();
+                releaseLocal(path);
+            }
+        }
+    }
+
+    /**
+     * Content of removed lock file, live lock files are always empty.
+     */
+    private static final byte[] DELETED = {1};
+
+    /**
+     * @return acquired exclusive lock or {@code null} when lock is busy and {@code wait} is {@code false}
+     */
+    static Lock lock(Path path, boolean wait) throws IOException {
+        return lock(path, wait, false);
+    }
+
+    /**
+     * @param shared take shared file lock, it still excludes threads of same JVM
+     * @return acquired lock or {@code null} when lock is busy and {@code wait} is {@code false}
+     */
+    static Lock lock(Path path, boolean wait, boolean shared) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Local local = acquireLocal(absolute);
+        if (wait) {
+            local.lock.lock();
+        } else if (!local.lock.tryLock()) {
+            releaseLocal(absolute);
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            while (true) {
+                channel = FileChannel.open(absolute, CREATE, READ, WRITE);
+                FileLock lock = wait ? channel.lock(0, Long.MAX_VALUE, shared) : channel.tryLock(0, Long.MAX_VALUE, shared);
+                if (lock == null) {
+                    channel.close();
+                    local.lock.unlock();
+                    releaseLocal(absolute);
+                    return null;
+                }
+                if (channel.size() == 0) {
+                    return new Lock(absolute, local, channel);
+                }
+                //Lock file was removed while we waited for it
+                channel.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            local.lock.unlock();
+            releaseLocal(absolute);
+            throw e;
+        }
+    }
+
+    private static void touch(Path dir) throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    private static long size(Path dir) {
+        try {
+            return FileUtils
+                    .scan(dir, "*")
+                    .stream()
+                    .filter(FileUtils.Scanned::isFile)
+                    .mapToLong(FileUtils.Scanned::getSize)
+                    .sum();
+        } catch (IllegalStateException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Remove least recently used entries until cache fits into size cap.
+     */
+    void evict(Path keep) throws IOException {
+        List<FileUtils.Scanned> entries = FileUtils
+                .scan(root, "*")
+                .stream()
+                .filter(FileUtils.Scanned::isDirectory)
+                .sorted(Comparator.comparing(FileUtils.Scanned::getLastModifiedTime))
+                .collect(Collectors.toCollection(ArrayList::new));
+        long total = entries.stream().map(FileUtils.Scanned::getPath).mapToLong(BundleCache::size).sum();
+        for (FileUtils.Scanned scanned : entries) {
+            Path entry = scanned.getPath();
+            if (total <= maxSize) {
+                break;
+            }
+            if (entry.equals(keep)) {
+                continue;
+            }
+            //Entry which is extracted or hit right now by other thread or process must not be removed
+            Path lockFile = root.resolve(entry.getName(entry.getNameCount() - 1).toString() + LOCK_SUFFIX);
+            try (
+                    Lock lock = lock(lockFile, false)
+            ) {
+                if (lock == null) {
+                    continue;
+                }
+                long size = size(entry);
+                try {
+                    if (!Files.getLastModifiedTime(entry).equals(scanned.getLastModifiedTime())) {
+                        //Entry was used after scan
+                        continue;
+                    }
+                } catch (NoSuchFileException e) {
+                    //Entry was evicted by other process
+                    lock.delete();
+                    continue;
+                }
+                FileUtils.deleteRecursively(entry);
+                lock.delete();
+                total -= size;
+            }
+        }
+    }
+}
@@ -1,60 +1,510 @@
 package com.github.valery1707.mongo.bundle;
 
 import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
 import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.IVersion;
 import de.flapdoodle.embed.process.io.directories.PropertyOrPlatformTempDir;
 import de.flapdoodle.embed.process.store.IDownloader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.zip.ZipEntry;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.github.valery1707.mongo.bundle.ZipUtils.extract;
 import static de.flapdoodle.embed.process.io.file.Files.createTempFile;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 @SuppressWarnings("UnnecessarySemicolon")
 public class BundleExtractor implements IDownloader {
+    /**
+     * Directory for extracted archives, for example {@code /dev/shm}, or {@link #TARGET_MEMORY}.
+     */
+    public static final String PROPERTY_TARGET = "mongo.bundle.extract.target";
+    /**
+     * {@link #open} reads archive into pooled direct buffer instead of file.
+     */
+    public static final String TARGET_MEMORY = "memory";
+
+    /**
+     * Concurrent downloads of same entry share one extraction into cache.
+     */
+    private static final SingleFlight<String, Path> EXTRACTIONS = new SingleFlight<>();
+    private static final ExecutorService PREWARM = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "mongo-bundle-prewarm");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final boolean snapshot;
+    private final BundleCache cache;
+    private final String target;
 
-    public BundleExtractor(boolean snapshot) {
+    /**
+     * @param target directory for extracted archives, {@link #TARGET_MEMORY} or {@code null} for temp directory
+     */
+    public BundleExtractor(boolean snapshot, BundleCache cache, String target) {
         this.snapshot = snapshot;
+        this.cache = cache;
+        this.target = target;
+    }
+
+    public BundleExtractor(boolean snapshot, BundleCache cache) {
+        this(snapshot, cache, System.getProperty(PROPERTY_TARGET));
+    }
+
+    public BundleExtractor(boolean snapshot) {
+        this(snapshot, BundleCache.defaultInstance());
     }
 
     public BundleExtractor() {
         this(true);
     }
 
+    public BundleCache getCache() {
+        return cache;
+    }
+
     @Override
     public String getDownloadUrl(IDownloadConfig runtime, Distribution distribution) {
         return null;
     }
 
-    @Override
-    public File download(IDownloadConfig config, Distribution distribution) throws IOException {
-        File ret = createTempFile(
-                PropertyOrPlatformTempDir.defaultInstance(),
-                config.getFileNaming().nameFor(
-                        config.getDownloadPrefix(), "." + config.getPackageResolver().getArchiveType(distribution)
-                )
-        );
-        String version = distribution
+    static String version(Distribution distribution) {
+        return distribution
                 .getVersion()
                 .toString()
                 .replaceFirst("^V", "")
                 .replace('_', '.');
-        Path jar = MavenUtils
-                .findLibrary("com.github.valery1707", "mongo-bundle", version, ".jar", snapshot)
-                .orElseThrow(() -> new IOException("Mongo bundle jar not found"));
-        String name = String.format("mongo/%s-%s-%s.%s",
+    }
+
+    static String entryName(IDownloadConfig config, Distribution distribution) {
+        return String.format("mongo/%s-%s-%s.%s",
                 distribution.getPlatform(), distribution.getVersion(), distribution.getBitsize(),
                 config.getPackageResolver().getArchiveType(distribution)
         );
-        extract(jar, entry -> entry
-                .map(ZipEntry::getName)
-                .filter(name::equals)
-                .map(__ -> ret.toPath())
+    }
+
+    /**
+     * Classifier of bundle jar with binaries only for platform of distribution, for example {@code linux-64}.
+     */
+    static String classifier(Distribution distribution) {
+        return distribution.getPlatform().name().replace("_", "").toLowerCase(Locale.ROOT)
+                + "-"
+                + distribution.getBitsize().name().replaceFirst("^B", "");
+    }
+
+    /**
+     * Classifiers of published jars, other platforms are only in jar with all platforms.
+     */
+    static final Set<String> CLASSIFIERS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "linux-64", "linux-32", "windows-64", "windows-32", "osx-64", "solaris-64", "freebsd-64"
+    )));
+
+    /**
+     * Bundle jar in maven repository: jar with only platform of distribution is preferred to jar with all platforms.
+     */
+    Path findJar(Distribution distribution) throws IOException {
+        String version = version(distribution);
+        String classifier = classifier(distribution);
+        Optional<Path> jar = CLASSIFIERS.contains(classifier)
+                ? MavenUtils.findLibrary("com.github.valery1707", "mongo-bundle", version, "-" + classifier + ".jar", snapshot)
+                : Optional.empty();
+        if (!jar.isPresent()) {
+            jar = MavenUtils
+                    .findLibrary("com.github.valery1707", "mongo-bundle", version, ".jar", snapshot);
+        }
+        return jar.orElseThrow(() -> new IOException("Mongo bundle jar not found"));
+    }
+
+    @Override
+    public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return downloadBundled(config, distribution);
+        } finally {
+            BundleMetrics.phase(BundleListener.Phase.DOWNLOAD, distribution.toString(), start);
+        }
+    }
+
+    private File downloadBundled(IDownloadConfig config, Distribution distribution) throws IOException {
+        Source source = source(config, distribution);
+        File ret = createTempFile(
+                targetDirectory(source.size),
+                config.getFileNaming().nameFor(
+                        config.getDownloadPrefix(), "." + config.getPackageResolver().getArchiveType(distribution)
+                )
         );
+        if (source.file != null) {
+            Files.copy(source.file, ret.toPath(), REPLACE_EXISTING);
+        } else if (cache.isEnabled()) {
+            //Flapdoodle moves downloaded file into own artifact store, so it must not get cached file itself
+            useCached(source, cached -> Files.copy(cached, ret.toPath(), REPLACE_EXISTING));
+        } else {
+            source.extractor.extract(ret.toPath());
+        }
         return ret;
     }
+
+    /**
+     * Origin of distribution archive: plain file or entry which must be extracted into cache.
+     */
+    private static final class Source {
+        private final String name;
+        private final Path file;
+        private final String key;
+        private final BundleCache.VerifyingExtractor extractor;
+        /**
+         * Size of archive in bytes, {@code -1} when it is known only after extraction.
+         */
+        private final long size;
+
+        private Source(String name, Path file, String key, BundleCache.VerifyingExtractor extractor, long size) {
+            this.name = name;
+            this.file = file;
+            this.key = key;
+            this.extractor = extractor;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Directory for archive of given size: configured target when it is writable and has enough usable space,
+     * otherwise temp directory.
+     */
+    private File targetDirectory(long size) {
+        if (target != null && !target.isEmpty() && !TARGET_MEMORY.equals(target)) {
+            Path directory = Paths.get(target);
+            try {
+                if (Files.isDirectory(directory) && Files.isWritable(directory)
+                    && Files.getFileStore(directory).getUsableSpace() > Math.max(size, 0)) {
+                    return directory.toFile();
+                }
+            } catch (IOException e) {
+                //Target is not usable: temp directory is used instead
+            }
+        }
+        return PropertyOrPlatformTempDir.defaultInstance().asFile();
+    }
+
+    private Source source(IDownloadConfig config, Distribution distribution) throws IOException {
+        String version = version(distribution);
+        String name = entryName(config, distribution);
+        Optional<BundleIndex.Entry> indexed = indexed(config, distribution);
+        Optional<Path> indexedJar = indexed.isPresent() && !indexed.get().isManifest()
+                ? BundleIndex.find(distribution).flatMap(BundleIndex::getJar)
+                : Optional.empty();
+        if (indexedJar.isPresent()) {
+            return fromJar(indexedJar.get(), name, version, indexed.get().getDigest(), indexed.get().getSize());
+        }
+        Optional<URL> resource = ClasspathUtils.findResource(name);
+        if (resource.isPresent()) {
+            URL url = resource.get();
+            Optional<Path> jar = ClasspathUtils.jarOf(url);
+            Optional<Path> file = ClasspathUtils.fileOf(url);
+            if (jar.isPresent()) {
+                return fromJar(jar.get(), name, version, null, ZipUtils.size(jar.get(), name));
+            } else if (file.isPresent()) {
+                return new Source(name, file.get(), null, null, Files.size(file.get()));
+            } else {
+                //Nested jar (shaded or fat-jar deployment): stream resource directly
+                return new Source(
+                        name, null,
+                        key(url, name, version),
+                        target -> {
+                            MessageDigest digest = Digests.create(Digests.SHA_256);
+                            try (
+                                    InputStream input = new DigestInputStream(url.openStream(), digest);
+                            ) {
+                                Files.copy(input, target, REPLACE_EXISTING);
+                            }
+                            String actual = Digests.hex(digest.digest());
+                            Digests.verify(checksum(ClasspathUtils.findResource(name + Digests.SHA_256_SUFFIX)), actual, url.toString());
+                            return actual;
+                        },
+                        url.openConnection().getContentLengthLong()
+                );
+            }
+        }
+        Optional<BundleManifest> manifest = BundleManifest.find(distribution);
+        if (manifest.isPresent()) {
+            //Multi-version bundle: archive is rebuilt from deduplicated blobs
+            ArchiveType type = config.getPackageResolver().getArchiveType(distribution);
+            return new Source(
+                    name, null,
+                    key(manifest.get().getUrl(), BundleManifest.manifestName(distribution), version),
+                    target -> manifest.get().writeArchive(type, target),
+                    -1
+            );
+        }
+        Path jar = findJar(distribution);
+        return fromJar(jar, name, version, null, ZipUtils.size(jar, name));
+    }
+
+    /**
+     * Distribution listed in bundle index with archive type of config.
+     */
+    static Optional<BundleIndex.Entry> indexed(IDownloadConfig config, Distribution distribution) throws IOException {
+        String name = entryName(config, distribution);
+        ArchiveType type = config.getPackageResolver().getArchiveType(distribution);
+        return BundleIndex
+                .find(distribution)
+                .flatMap(index -> index.get(distribution))
+                .filter(entry -> entry.getType() == type)
+                .filter(entry -> entry.isManifest() || entry.getResource().equals(name));
+    }
+
+    /**
+     * Check that classpath contains distribution: as plain archive, in bundle index or in manifest of multi-version bundle.
+     */
+    boolean isBundled(IDownloadConfig config, Distribution distribution) throws IOException {
+        return indexed(config, distribution).isPresent()
+                || ClasspathUtils.findResource(entryName(config, distribution)).isPresent()
+                || BundleManifest.find(distribution).isPresent();
+    }
+
+    /**
+     * Check that bundle contains distribution: answered by bundle index when it lists distribution,
+     * otherwise archive is looked up on classpath and in central directory of jar from maven repository.
+     * Archive itself is not read.
+     */
+    public boolean isAvailable(IDownloadConfig config, Distribution distribution) throws IOException {
+        if (isBundled(config, distribution)) {
+            return true;
+        }
+        try {
+            return ZipUtils.contains(findJar(distribution), entryName(config, distribution));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Cache key of archive of distribution, changes together with its source.
+     */
+    String cacheKey(IDownloadConfig config, Distribution distribution) throws IOException {
+        Source source = source(config, distribution);
+        return source.key != null
+                ? source.key
+                : BundleCache.key(source.file, source.name, version(distribution));
+    }
+
+    private static String key(URL url, String name, String version) throws IOException {
+        Optional<Path> jar = ClasspathUtils.jarOf(url);
+        if (jar.isPresent()) {
+            return BundleCache.key(jar.get(), name, version);
+        }
+        URLConnection connection = url.openConnection();
+        return BundleCache.key(url.toString(), connection.getContentLengthLong(), connection.getLastModified(), name, version);
+    }
+
+    /**
+     * Manifest of distribution in multi-version bundle, when classpath contains no plain archive of it.
+     */
+    Optional<BundleManifest> manifest(IDownloadConfig config, Distribution distribution) throws IOException {
+        if (ClasspathUtils.findResource(entryName(config, distribution)).isPresent()) {
+            return Optional.empty();
+        }
+        return BundleManifest.find(distribution);
+    }
+
+    /**
+     * @param expected SHA-256 of archive from bundle index, {@code null} to look it up in jar
+     */
+    private static Source fromJar(Path jar, String name, String version, String expected, long size) throws IOException {
+        return new Source(
+                name, null,
+                BundleCache.key(jar, name, version),
+                target -> extract(jar, name, target, expected != null ? expected : checksum(jar, name)),
+                size
+        );
+    }
+
+    /**
+     * Expected SHA-256 of archive, recorded next to it by build of bundle.
+     *
+     * @return {@code null} for bundles built without checksums
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static String checksum(Path jar, String name) throws IOException {
+        try (
+                InputStream input = ZipUtils.open(jar, name + Digests.SHA_256_SUFFIX);
+        ) {
+            return Digests.readChecksum(input).orElse(null);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static String checksum(Optional<URL> url) throws IOException {
+        return url.isPresent()
+                ? Digests.readChecksum(url.get().openStream()).orElse(null)
+                : null;
+    }
+
+    private static String cachedName(Source source) {
+        return source.name.substring(source.name.lastIndexOf('/') + 1);
+    }
+
+    private Path extractCached(Source source) throws IOException {
+        return EXTRACTIONS.execute(
+                cache.getRoot().toAbsolutePath() + "/" + source.key,
+                () -> cache.getVerified(source.key, cachedName(source), source.extractor)
+        );
+    }
+
+    /**
+     * Run action with cached archive while cache entry is locked, so it is not evicted by other process meanwhile.
+     * Caller waits for in-flight extraction of same entry on its lock and reuses result.
+     */
+    private <T> T useCached(Source source, BundleCache.Action<T> action) throws IOException {
+        return cache.useVerified(source.key, cachedName(source), source.extractor, action);
+    }
+
+    /**
+     * Start resolution and extraction of distributions in background daemon threads,
+     * so {@link #download} of them later joins in-flight extraction or gets it from cache.
+     * Without cache only resolution of bundle jars is warmed up.
+     *
+     * @return future which is completed when every distribution is ready
+     */
+    public CompletableFuture<Void> prewarm(IDownloadConfig config, Collection<Distribution> distributions) {
+        //Bundle is looked up in context class loader of caller, not of pooled thread
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return CompletableFuture.allOf(distributions
+                .stream()
+                .map(distribution -> CompletableFuture.runAsync(() -> {
+                    Thread thread = Thread.currentThread();
+                    ClassLoader original = thread.getContextClassLoader();
+                    thread.setContextClassLoader(classLoader);
+                    try {
+                        Source source = source(config, distribution);
+                        if (source.file == null && cache.isEnabled()) {
+                            extractCached(source);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        thread.setContextClassLoader(original);
+                    }
+                }, PREWARM))
+                .toArray(CompletableFuture[]::new)
+        );
+    }
+
+    /**
+     * Prewarm versions for current platform.
+     */
+    public CompletableFuture<Void> prewarm(IDownloadConfig config, IVersion... versions) {
+        return prewarm(config, Stream.of(versions).map(Distribution::detectFor).collect(Collectors.toList()));
+    }
+
+    /**
+     * Open archive of distribution directly from bundle, without any intermediate file.
+     * With {@link #TARGET_MEMORY} target archive is read into pooled direct buffer, which is released on close of stream.
+     */
+    public InputStream open(IDownloadConfig config, Distribution distribution) throws IOException {
+        String name = entryName(config, distribution);
+        Optional<BundleIndex.Entry> indexed = indexed(config, distribution);
+        if (indexed.isPresent() && !indexed.get().isManifest()) {
+            Optional<Path> jar = BundleIndex.find(distribution).flatMap(BundleIndex::getJar);
+            if (jar.isPresent()) {
+                return openEntry(jar.get(), name);
+            }
+        }
+        Optional<URL> resource = ClasspathUtils.findResource(name);
+        if (resource.isPresent()) {
+            URL url = resource.get();
+            Optional<Path> jar = ClasspathUtils.jarOf(url);
+            Optional<Path> file = ClasspathUtils.fileOf(url);
+            if (jar.isPresent()) {
+                return openEntry(jar.get(), name);
+            } else if (file.isPresent()) {
+                return openFile(file.get());
+            } else {
+                return url.openStream();
+            }
+        }
+        if (BundleManifest.find(distribution).isPresent()) {
+            Source source = source(config, distribution);
+            if (cache.isEnabled()) {
+                return useCached(source, this::openFile);
+            }
+            Path temp = Files.createTempFile(targetDirectory(source.size).toPath(), "mongo-bundle", name.substring(name.lastIndexOf('/') + 1));
+            try {
+                source.extractor.extract(temp);
+            } catch (IOException | RuntimeException e) {
+                Files.delete(temp);
+                throw e;
+            }
+            if (isMemory()) {
+                try {
+                    return openFile(temp);
+                } finally {
+                    Files.delete(temp);
+                }
+            }
+            return Files.newInputStream(temp, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return openEntry(findJar(distribution), name);
+    }
+
+    private boolean isMemory() {
+        return TARGET_MEMORY.equals(target);
+    }
+
+    private InputStream openEntry(Path jar, String name) throws IOException {
+        return isMemory()
+                ? BufferPool.stream(ZipUtils.read(jar, name, BufferPool::acquire, BufferPool::release))
+                : ZipUtils.open(jar, name);
+    }
+
+    private InputStream openFile(Path file) throws IOException {
+        if (!isMemory()) {
+            return Files.newInputStream(file);
+        }
+        try (
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File is too large for memory: " + file.normalize().toAbsolutePath().toString());
+            }
+            ByteBuffer buffer = BufferPool.acquire((int) size);
+            try {
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    //Read whole file
+                }
+            } catch (IOException | RuntimeException e) {
+                BufferPool.release(buffer);
+                throw e;
+            }
+            buffer.flip();
+            return BufferPool.stream(buffer);
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of distributions in bundle written by build as {@code mongo/<Platform>-<BitSize>/index.properties},
+ * line format: {@code <Platform>-<Version>-<BitSize>=<archive type> <size> <sha256> <resource>}.
+ * <p>
+ * Index is loaded once per jar, so availability, size and checksum of distribution are known without lookup of entries.
+ * Offsets of entries are known only after packaging of jar, they are taken from memoized central directory.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BundleIndex {
+    public static final class Entry {
+        private final ArchiveType type;
+        private final long size;
+        private final String digest;
+        private final String resource;
+
+        Entry(ArchiveType type, long size, String digest, String resource) {
+            this.type = type;
+            this.size = size;
+            this.digest = digest;
+            this.resource = resource;
+        }
+
+        public ArchiveType getType() {
+            return type;
+        }
+
+        /**
+         * @return uncompressed size of resource in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return SHA-256 of resource in hex
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return name of archive or of manifest in {@code blobs} layout
+         */
+        public String getResource() {
+            return resource;
+        }
+
+        public boolean isManifest() {
+            return resource.endsWith(".manifest");
+        }
+    }
+
+    /**
+     * Loaded indexes by URL and modification stamp of their jar.
+     */
+    private static final Map<String, BundleIndex> LOADED = new ConcurrentHashMap<>();
+
+    private final URL url;
+    private final Map<String, Entry> entries;
+
+    BundleIndex(URL url, Map<String, Entry> entries) {
+        this.url = url;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Jar with index and indexed resources, empty for index from directory or nested jar.
+     */
+    public Optional<Path> getJar() {
+        return ClasspathUtils.jarOf(url);
+    }
+
+    public Optional<Entry> get(Distribution distribution) {
+        return Optional.ofNullable(entries.get(key(distribution)));
+    }
+
+    static String indexName(Distribution distribution) {
+        return "mongo/" + BundleManifest.blobDirectory(distribution) + "/index.properties";
+    }
+
+    static String key(Distribution distribution) {
+        return distribution.getPlatform() + "-" + distribution.getVersion() + "-" + distribution.getBitsize();
+    }
+
+    /**
+     * Find index of platform of distribution on classpath.
+     */
+    public static Optional<BundleIndex> find(Distribution distribution) throws IOException {
+        Optional<URL> url = ClasspathUtils.findResource(indexName(distribution));
+        return url.isPresent()
+                ? Optional.of(load(url.get()))
+                : Optional.empty();
+    }
+
+    static BundleIndex load(URL url) throws IOException {
+        String key = url + "\n" + stamp(url);
+        BundleIndex index = LOADED.get(key);
+        if (index == null) {
+            index = read(url);
+            //Index of rebuilt jar replaces previous one
+            LOADED.keySet().removeIf(loaded -> loaded.startsWith(url + "\n"));
+            LOADED.put(key, index);
+        }
+        return index;
+    }
+
+    private static String stamp(URL url) throws IOException {
+        Optional<Path> file = ClasspathUtils.jarOf(url);
+        if (!file.isPresent()) {
+            file = ClasspathUtils.fileOf(url);
+        }
+        if (!file.isPresent()) {
+            return "";
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file.get(), BasicFileAttributes.class);
+        return attributes.size() + "\n" + attributes.lastModifiedTime().toMillis();
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    static BundleIndex read(URL url) throws IOException {
+        Properties properties = new Properties();
+        try (
+                InputStream input = url.openStream();
+        ) {
+            properties.load(input);
+        }
+        Map<String, Entry> entries = new LinkedHashMap<>(properties.size() * 4 / 3 + 1);
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            String[] parts = value.trim().split(" ", 4);
+            if (parts.length != 4) {
+                throw new IOException("Invalid line of index " + url + ": " + key + "=" + value);
+            }
+            try {
+                entries.put(key, new Entry(ArchiveType.valueOf(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid line of index " + url + ": " + key + "=" + value, e);
+            }
+        }
+        return new BundleIndex(url, entries);
+    }
+}
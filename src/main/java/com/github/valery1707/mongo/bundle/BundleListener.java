@@ -0,0 +1,52 @@
+package com.github.valery1707.mongo.bundle;
+
+/**
+ * Receiver of timing and throughput events of bundle resolution and extraction.
+ * Implementations are registered in {@link BundleMetrics} and must be thread-safe and fast:
+ * events are delivered synchronously from working threads.
+ */
+public interface BundleListener {
+    enum Phase {
+        /**
+         * Lookup of bundle jar in maven repositories.
+         */
+        RESOLVE,
+        /**
+         * Reading of archive index or scanning of archive until requested entries.
+         */
+        SCAN,
+        /**
+         * Copying of entry bytes into target file.
+         */
+        COPY,
+        /**
+         * Waiting for extraction lock of cache entry.
+         */
+        LOCK_WAIT,
+        /**
+         * Whole download of distribution archive.
+         */
+        DOWNLOAD,
+    }
+
+    default void onPhase(Phase phase, String subject, long nanos) {
+    }
+
+    default void onBytes(String subject, long read, long written) {
+    }
+
+    default void onSkipped(String subject, long entries) {
+    }
+
+    default void onCacheHit(String key) {
+    }
+
+    default void onCacheMiss(String key) {
+    }
+
+    /**
+     * Source of {@link CompositeDownloader} which delivered archive first.
+     */
+    default void onSource(String subject, String source, long nanos) {
+    }
+}
@@ -0,0 +1,292 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.extract.IArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Distribution in deduplicated multi-version layout: every file of distribution archive is stored once
+ * as gzip-compressed blob {@code mongo/<Platform>-<BitSize>/<sha256>.gz}, and manifest
+ * {@code mongo/<Platform>-<Version>-<BitSize>.manifest} lists files of archive in original order.
+ * <p>
+ * Manifest line format: {@code <sha256> <octal mode> <size> <path>}, lines starting with {@code #} are ignored.
+ */
+@SuppressWarnings({"WeakerAccess", "UnnecessarySemicolon"})
+public final class BundleManifest {
+    public static final class Entry implements IArchiveEntry {
+        private final String digest;
+        private final int mode;
+        private final long size;
+        private final String path;
+
+        Entry(String digest, int mode, long size, String path) {
+            this.digest = digest;
+            this.mode = mode;
+            this.size = size;
+            this.path = path;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        public int getMode() {
+            return mode;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String getName() {
+            return path;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return false;
+        }
+    }
+
+    private static final int REGULAR_FILE = 0100000;
+
+    private final URL url;
+    private final String blobDirectory;
+    private final List<Entry> entries;
+
+    BundleManifest(URL url, String blobDirectory, List<Entry> entries) {
+        this.url = url;
+        this.blobDirectory = blobDirectory;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    static String manifestName(Distribution distribution) {
+        return String.format("mongo/%s-%s-%s.manifest",
+                distribution.getPlatform(), distribution.getVersion(), distribution.getBitsize()
+        );
+    }
+
+    static String blobDirectory(Distribution distribution) {
+        return distribution.getPlatform() + "-" + distribution.getBitsize();
+    }
+
+    /**
+     * Find manifest of distribution on classpath.
+     */
+    public static Optional<BundleManifest> find(Distribution distribution) throws IOException {
+        Optional<URL> url = ClasspathUtils.findResource(manifestName(distribution));
+        return url.isPresent()
+                ? Optional.of(read(url.get(), blobDirectory(distribution)))
+                : Optional.empty();
+    }
+
+    static BundleManifest read(URL url, String blobDirectory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (
+                InputStream input = url.openStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 4);
+                if (parts.length != 4) {
+                    throw new IOException("Invalid line of manifest " + url + ": " + line);
+                }
+                try {
+                    entries.add(new Entry(parts[0], Integer.parseInt(parts[1], 8), Long.parseLong(parts[2]), parts[3]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid line of manifest " + url + ": " + line, e);
+                }
+            }
+        }
+        return new BundleManifest(url, blobDirectory, entries);
+    }
+
+    /**
+     * Open content of file: blobs are resolved relative to manifest, so they are read from same jar or directory.
+     * Size and SHA-256 of content are verified against manifest when last byte of file is read.
+     */
+    @SuppressWarnings("resource")
+    public InputStream open(Entry entry) throws IOException {
+        String blob = blobDirectory + "/" + entry.getDigest() + ".gz";
+        Optional<Path> jar = ClasspathUtils.jarOf(url);
+        InputStream input = jar.isPresent()
+                ? ZipUtils.open(jar.get(), "mongo/" + blob)
+                : new URL(url, blob).openStream();
+        try {
+            return new VerifyingInputStream(new GZIPInputStream(input, 64 * 1024), entry, url + "!" + blob);
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Consumers could stop right after expected size without reading end of stream, so check is done at that point.
+     */
+    private static final class VerifyingInputStream extends FilterInputStream {
+        private final MessageDigest digest = Digests.create(Digests.SHA_256);
+        private final Entry entry;
+        private final String subject;
+        private long count;
+        private boolean verified;
+
+        private VerifyingInputStream(InputStream input, Entry entry, String subject) {
+            super(input);
+            this.entry = entry;
+            this.subject = subject;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                digest.update((byte) b);
+                count++;
+            }
+            check(b < 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                digest.update(b, off, read);
+                count += read;
+            }
+            check(read < 0);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            //Skipped bytes must be hashed too
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void check(boolean end) throws IOException {
+            if (verified || (!end && count < entry.getSize())) {
+                return;
+            }
+            verified = true;
+            if (count != entry.getSize()) {
+                throw new IOException("Size mismatch of " + subject + ": expected " + entry.getSize() + ", actual " + count);
+            }
+            Digests.verify(entry.getDigest(), Digests.hex(digest.digest()), subject);
+        }
+    }
+
+    /**
+     * Rebuild distribution archive from blobs: files are written in original order with original modes.
+     * Compression level is lowest one, because archive is only an intermediate form for extractor.
+     *
+     * @return SHA-256 of written archive in hex
+     */
+    public String writeArchive(ArchiveType type, Path target) throws IOException {
+        MessageDigest digest = Digests.create(Digests.SHA_256);
+        try (
+                OutputStream output = new BufferedOutputStream(new DigestOutputStream(Files.newOutputStream(target), digest), 64 * 1024);
+                ArchiveOutputStream archive = archive(type, output);
+        ) {
+            for (Entry entry : entries) {
+                archive.putArchiveEntry(archiveEntry(type, entry));
+                try (
+                        InputStream input = open(entry);
+                ) {
+                    IOUtils.copyLarge(input, archive);
+                }
+                archive.closeArchiveEntry();
+            }
+            archive.finish();
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    private static ArchiveOutputStream archive(ArchiveType type, OutputStream output) throws IOException {
+        switch (type) {
+            case TGZ:
+                GzipParameters parameters = new GzipParameters();
+                parameters.setCompressionLevel(Deflater.BEST_SPEED);
+                TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(output, parameters));
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                return tar;
+            case ZIP:
+                ZipArchiveOutputStream zip = new ZipArchiveOutputStream(output);
+                zip.setLevel(Deflater.BEST_SPEED);
+                return zip;
+            default:
+                throw new IOException("Unsupported archive type: " + type);
+        }
+    }
+
+    private static ArchiveEntry archiveEntry(ArchiveType type, Entry entry) {
+        if (type == ArchiveType.ZIP) {
+            ZipArchiveEntry zip = new ZipArchiveEntry(entry.getName());
+            zip.setSize(entry.getSize());
+            zip.setUnixMode(entry.getMode());
+            return zip;
+        }
+        TarArchiveEntry tar = new TarArchiveEntry(entry.getName());
+        tar.setSize(entry.getSize());
+        tar.setMode(REGULAR_FILE | entry.getMode());
+        return tar;
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Registry of {@link BundleListener}s.
+ * Listeners are loaded with {@link ServiceLoader}, enabled with system property {@value #PROPERTY_LISTENERS}
+ * (comma separated: {@code log} - {@link LoggingBundleListener}, {@code jmx} - {@link JmxBundleListener})
+ * or added at runtime.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class BundleMetrics {
+    public static final String PROPERTY_LISTENERS = "mongo.bundle.metrics";
+
+    private static final List<BundleListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final List<RuntimeException> INIT_ERRORS = new CopyOnWriteArrayList<>();
+
+    static {
+        for (BundleListener listener : ServiceLoader.load(BundleListener.class)) {
+            LISTENERS.add(listener);
+        }
+        for (String name : System.getProperty(PROPERTY_LISTENERS, "").split(",")) {
+            switch (name.trim().toLowerCase(Locale.ROOT)) {
+                case "log":
+                    LISTENERS.add(new LoggingBundleListener());
+                    break;
+                case "jmx":
+                    try {
+                        LISTENERS.add(JmxBundleListener.register());
+                    } catch (IllegalStateException | SecurityException e) {
+                        //Metrics must not break class initialization: listener is skipped
+                        INIT_ERRORS.add(e);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private BundleMetrics() {
+    }
+
+    public static void addListener(BundleListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(BundleListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    public static List<BundleListener> getListeners() {
+        return Collections.unmodifiableList(LISTENERS);
+    }
+
+    /**
+     * @return failures of listeners requested by {@value #PROPERTY_LISTENERS}, which were skipped
+     */
+    public static List<RuntimeException> getInitErrors() {
+        return Collections.unmodifiableList(INIT_ERRORS);
+    }
+
+    static void phase(BundleListener.Phase phase, String subject, long startNanos) {
+        duration(phase, subject, System.nanoTime() - startNanos);
+    }
+
+    static void duration(BundleListener.Phase phase, String subject, long nanos) {
+        fire(listener -> listener.onPhase(phase, subject, nanos));
+    }
+
+    static void bytes(String subject, long read, long written) {
+        fire(listener -> listener.onBytes(subject, read, written));
+    }
+
+    static void skipped(String subject, long entries) {
+        if (entries > 0) {
+            fire(listener -> listener.onSkipped(subject, entries));
+        }
+    }
+
+    static void cache(String key, boolean hit) {
+        if (hit) {
+            fire(listener -> listener.onCacheHit(key));
+        } else {
+            fire(listener -> listener.onCacheMiss(key));
+        }
+    }
+
+    static void source(String subject, String source, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        fire(listener -> listener.onSource(subject, source, nanos));
+    }
+
+    private static void fire(Consumer<BundleListener> event) {
+        for (BundleListener listener : LISTENERS) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException ignored) {
+                //Broken listener must not break extraction
+            }
+        }
+    }
+}
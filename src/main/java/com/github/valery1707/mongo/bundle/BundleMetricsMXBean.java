@@ -0,0 +1,37 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.util.Map;
+
+/**
+ * Cumulative counters of {@link JmxBundleListener}.
+ */
+public interface BundleMetricsMXBean {
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getEntriesSkipped();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getLockWaitNanos();
+
+    /**
+     * @return total duration of every {@link BundleListener.Phase} in nanoseconds
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * @return count of finished {@link BundleListener.Phase}s
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * @return count of downloads delivered by every source of {@link CompositeDownloader}
+     */
+    Map<String, Long> getSourceWins();
+
+    void reset();
+}
@@ -0,0 +1,62 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+@SuppressWarnings("WeakerAccess")
+public final class ClasspathUtils {
+    private ClasspathUtils() {
+    }
+
+    public static Optional<URL> findResource(String name) {
+        return findResource(name, Thread.currentThread().getContextClassLoader(), ClasspathUtils.class.getClassLoader());
+    }
+
+    static Optional<URL> findResource(String name, ClassLoader... loaders) {
+        return Stream
+                .of(loaders)
+                .filter(Objects::nonNull)
+                .map(loader -> loader.getResource(name))
+                .filter(Objects::nonNull)
+                .findFirst();
+    }
+
+    /**
+     * Jar file on default file system which contains resource, empty for resources from nested jars.
+     */
+    static Optional<Path> jarOf(URL resource) {
+        if (!"jar".equals(resource.getProtocol())) {
+            return Optional.empty();
+        }
+        String spec = resource.getFile();
+        int separator = spec.indexOf("!/");
+        if (separator < 0 || spec.indexOf("!/", separator + 2) >= 0 || !spec.startsWith("file:")) {
+            return Optional.empty();
+        }
+        return toPath(spec.substring(0, separator));
+    }
+
+    /**
+     * Plain file on default file system which contains resource, for example in exploded classes directory.
+     */
+    static Optional<Path> fileOf(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return Optional.empty();
+        }
+        return toPath(resource.toString());
+    }
+
+    private static Optional<Path> toPath(String uri) {
+        try {
+            return Optional.of(Paths.get(new URI(uri)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
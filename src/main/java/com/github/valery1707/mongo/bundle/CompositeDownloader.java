@@ -0,0 +1,298 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.store.Downloader;
+import de.flapdoodle.embed.process.store.IDownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Downloader which tries sources in order until one of them delivers archive:
+ * by default bundle on classpath, bundle in maven repository, mirror and upstream network.
+ * <p>
+ * Every source is limited by own timeout. With hedging next source is started in parallel
+ * when current one did not finish in hedge delay, first delivered archive wins and other sources are cancelled.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CompositeDownloader implements IDownloader {
+    /**
+     * Directory or URL of mirror of upstream distributions.
+     */
+    public static final String PROPERTY_MIRROR = "mongo.bundle.mirror";
+    /**
+     * Timeout of every local source in seconds, network source is not limited.
+     */
+    public static final String PROPERTY_TIMEOUT = "mongo.bundle.source.timeout";
+    /**
+     * Delay in milliseconds before next source is started in parallel with slow one, negative value disables hedging.
+     */
+    public static final String PROPERTY_HEDGE = "mongo.bundle.hedge";
+    private static final long DEFAULT_TIMEOUT = 60;
+
+    private static final ExecutorService SOURCES = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "mongo-bundle-source");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static final class Source {
+        private final String name;
+        private final IDownloader downloader;
+        private final long timeoutMillis;
+
+        /**
+         * @param timeoutMillis limit of download, {@code 0} for unlimited
+         */
+        public Source(String name, IDownloader downloader, long timeoutMillis) {
+            this.name = name;
+            this.downloader = downloader;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public IDownloader getDownloader() {
+            return downloader;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+    }
+
+    private final List<Source> sources;
+    private final long hedgeMillis;
+    /**
+     * Winning source of last download by distribution.
+     */
+    private final Map<String, String> winners = new ConcurrentHashMap<>();
+
+    /**
+     * @param hedgeMillis delay before next source is started in parallel, negative value disables hedging
+     */
+    public CompositeDownloader(List<Source> sources, long hedgeMillis) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required");
+        }
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+        this.hedgeMillis = hedgeMillis;
+    }
+
+    public CompositeDownloader(BundleExtractor bundle) {
+        this(
+                defaultSources(bundle, System.getProperty(PROPERTY_MIRROR), SECONDS.toMillis(Long.getLong(PROPERTY_TIMEOUT, DEFAULT_TIMEOUT))),
+                Long.getLong(PROPERTY_HEDGE, -1)
+        );
+    }
+
+    public CompositeDownloader() {
+        this(new BundleExtractor());
+    }
+
+    /**
+     * Sources {@code classpath}, {@code maven}, {@code mirror} (when it is configured) and {@code network}.
+     */
+    public static List<Source> defaultSources(BundleExtractor bundle, String mirror, long timeoutMillis) {
+        List<Source> sources = new ArrayList<>();
+        sources.add(new Source("classpath", new IDownloader() {
+            @Override
+            public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+                return bundle.getDownloadUrl(config, distribution);
+            }
+
+            @Override
+            public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+                if (!bundle.isBundled(config, distribution)) {
+                    throw new NoSuchFileException(BundleExtractor.entryName(config, distribution), null, "Not found on classpath");
+                }
+                return bundle.download(config, distribution);
+            }
+        }, timeoutMillis));
+        sources.add(new Source("maven", bundle, timeoutMillis));
+        if (mirror != null && !mirror.isEmpty()) {
+            sources.add(new Source("mirror", new MirrorDownloader(mirror), timeoutMillis));
+        }
+        sources.add(new Source("network", new Downloader(), 0));
+        return sources;
+    }
+
+    public List<Source> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return name of source which delivered last download of distribution
+     */
+    public Optional<String> getSource(Distribution distribution) {
+        return Optional.ofNullable(winners.get(distribution.toString()));
+    }
+
+    @Override
+    public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+        return sources
+                .stream()
+                .map(source -> source.getDownloader().getDownloadUrl(config, distribution))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Download started from one of sources, deadline is {@link Long#MAX_VALUE} for unlimited source.
+     */
+    private static final class Attempt {
+        private final Source source;
+        private final long deadline;
+
+        private Attempt(Source source, long startNanos) {
+            this.source = source;
+            this.deadline = source.getTimeoutMillis() > 0
+                    ? startNanos + MILLISECONDS.toNanos(source.getTimeoutMillis())
+                    : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Files delivered by sources: only winner is kept, files of late sources are deleted.
+     */
+    private static final class Race {
+        private final List<File> files = new ArrayList<>();
+        private boolean finished;
+
+        synchronized boolean offer(File file) {
+            if (finished) {
+                return false;
+            }
+            files.add(file);
+            return true;
+        }
+
+        synchronized void finish(File winner) {
+            if (!finished) {
+                finished = true;
+                files.stream().filter(file -> !file.equals(winner)).forEach(File::delete);
+            }
+        }
+    }
+
+    @Override
+    public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+        long start = System.nanoTime();
+        String subject = distribution.toString();
+        //Bundle is looked up in context class loader of caller, not of pooled thread
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorCompletionService<File> completion = new ExecutorCompletionService<>(SOURCES);
+        Map<Future<File>, Attempt> running = new LinkedHashMap<>();
+        Race race = new Race();
+        IOException failure = new IOException(
+                "Distribution " + subject + " is not available in sources "
+                + sources.stream().map(Source::getName).collect(Collectors.joining(", "))
+        );
+        long hedgeNanos = hedgeMillis >= 0 ? MILLISECONDS.toNanos(hedgeMillis) : -1;
+        int next = 0;
+        long lastStarted = start;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                if (next < sources.size() && (running.isEmpty() || hedgeNanos >= 0 && now - lastStarted >= hedgeNanos)) {
+                    Source source = sources.get(next++);
+                    running.put(completion.submit(() -> attempt(source, config, distribution, classLoader, race)), new Attempt(source, now));
+                    lastStarted = now;
+                    continue;
+                }
+                if (running.isEmpty()) {
+                    throw failure;
+                }
+                long wait = Long.MAX_VALUE;
+                for (Attempt attempt : running.values()) {
+                    if (attempt.deadline != Long.MAX_VALUE) {
+                        wait = Math.min(wait, attempt.deadline - now);
+                    }
+                }
+                if (next < sources.size() && hedgeNanos >= 0) {
+                    wait = Math.min(wait, lastStarted + hedgeNanos - now);
+                }
+                Future<File> done = wait == Long.MAX_VALUE
+                        ? completion.take()
+                        : completion.poll(Math.max(wait, 0), NANOSECONDS);
+                if (done != null) {
+                    Attempt attempt = running.remove(done);
+                    if (attempt == null) {
+                        //Cancelled by timeout
+                        continue;
+                    }
+                    try {
+                        File file = done.get();
+                        race.finish(file);
+                        winners.put(subject, attempt.source.getName());
+                        BundleMetrics.source(subject, attempt.source.getName(), start);
+                        return file;
+                    } catch (ExecutionException e) {
+                        failure.addSuppressed(e.getCause());
+                    }
+                } else {
+                    long expired = System.nanoTime();
+                    for (Iterator<Map.Entry<Future<File>, Attempt>> iterator = running.entrySet().iterator(); iterator.hasNext(); ) {
+                        Map.Entry<Future<File>, Attempt> entry = iterator.next();
+                        Attempt attempt = entry.getValue();
+                        if (attempt.deadline != Long.MAX_VALUE && expired - attempt.deadline >= 0) {
+                            entry.getKey().cancel(true);
+                            iterator.remove();
+                            failure.addSuppressed(new InterruptedIOException(
+                                    "Source " + attempt.source.getName() + " timed out after " + attempt.source.getTimeoutMillis() + " ms"
+                            ));
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading " + subject);
+        } finally {
+            race.finish(null);
+            running.keySet().forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static File attempt(Source source, IDownloadConfig config, Distribution distribution, ClassLoader classLoader, Race race) throws IOException {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            File file = source.getDownloader().download(config, distribution);
+            if (!race.offer(file)) {
+                //Other source already won
+                Files.deleteIfExists(file.toPath());
+            }
+            return file;
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+final class Digests {
+    static final String SHA_256 = "SHA-256";
+    /**
+     * Suffix of checksum files in {@code sha256sum} format: {@code <hex>  <file name>}.
+     */
+    static final String SHA_256_SUFFIX = ".sha256";
+
+    private Digests() {
+    }
+
+    static MessageDigest create(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " is not supported", e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Read hash from checksum file: first token of first line.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    static Optional<String> readChecksum(InputStream input) throws IOException {
+        try (
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+        ) {
+            String line = reader.readLine();
+            if (line == null || line.trim().isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(line.trim().split("\\s+")[0].toLowerCase(Locale.ROOT));
+        }
+    }
+
+    static String checksumLine(String hash, String fileName) {
+        return hash + "  " + fileName + "\n";
+    }
+
+    static void verify(String expected, String actual, String subject) throws IOException {
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            throw new IOException(SHA_256 + " mismatch of " + subject + ": expected " + expected + ", actual " + actual);
+        }
+    }
+}
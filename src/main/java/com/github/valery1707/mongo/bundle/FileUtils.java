@@ -1,34 +1,139 @@
 package com.github.valery1707.mongo.bundle;
 
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+import static java.util.Collections.emptyList;
+
 @SuppressWarnings("WeakerAccess")
 public final class FileUtils {
     private FileUtils() {
     }
 
     static boolean isReadableFile(Path path) {
-        return Files.exists(path) && Files.isRegularFile(path) && Files.isReadable(path);
+        return attributes(path).filter(BasicFileAttributes::isRegularFile).isPresent() && Files.isReadable(path);
     }
 
     static boolean isReadableDirectory(Path path) {
-        return Files.exists(path) && Files.isDirectory(path) && Files.isReadable(path);
+        return attributes(path).filter(BasicFileAttributes::isDirectory).isPresent() && Files.isReadable(path);
     }
 
-    static Stream<Path> list(Path root, Predicate<? super Path> filter) {
+    /**
+     * Existence and type of path with single attributes read.
+     */
+    static Optional<BasicFileAttributes> attributes(Path path) {
         try {
-            return Files
-                    .list(root)
-                    .filter(filter::test);
+            return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Entry of scanned directory with attributes read once while directory was scanned.
+     */
+    static final class Scanned {
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        Scanned(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+
+        boolean isFile() {
+            return attributes.isRegularFile();
+        }
+
+        boolean isDirectory() {
+            return attributes.isDirectory();
+        }
+
+        long getSize() {
+            return attributes.size();
+        }
+
+        FileTime getLastModifiedTime() {
+            return attributes.lastModifiedTime();
+        }
+    }
+
+    /**
+     * Entries of directory with names matching glob: directory handle is closed before return
+     * and attributes of every entry are read once.
+     *
+     * @return empty list when directory does not exist, is not a directory or is not readable
+     */
+    static List<Scanned> scan(Path directory, String glob) {
+        List<Scanned> scanned = new ArrayList<>();
+        try (
+                DirectoryStream<Path> entries = Files.newDirectoryStream(directory, glob)
+        ) {
+            for (Path entry : entries) {
+                try {
+                    scanned.add(new Scanned(entry, Files.readAttributes(entry, BasicFileAttributes.class)));
+                } catch (NoSuchFileException ignored) {
+                    //Entry is removed while directory is scanned
+                }
+            }
+        } catch (NoSuchFileException | NotDirectoryException | AccessDeniedException e) {
+            return emptyList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Fail to scan files in " + directory.normalize().toAbsolutePath().toString(), e);
+        } catch (DirectoryIteratorException e) {
+            throw new IllegalStateException("Fail to scan files in " + directory.normalize().toAbsolutePath().toString(), e.getCause());
+        }
+        return scanned;
+    }
+
+    /**
+     * Escape special characters of glob, so text is matched literally.
+     */
+    static String escapeGlob(String text) {
+        return text.replaceAll("([\\\\*?\\[\\]{}])", "\\\\$1");
+    }
+
+    /**
+     * Materialized list of directory entries: directory handle is closed before return.
+     */
+    static Stream<Path> list(Path root, Predicate<? super Path> filter) {
+        List<Path> paths = new ArrayList<>();
+        try (
+                DirectoryStream<Path> entries = Files.newDirectoryStream(root, filter::test)
+        ) {
+            entries.forEach(paths::add);
         } catch (IOException e) {
             throw new IllegalStateException("Fail to list files in " + root.normalize().toAbsolutePath().toString(), e);
+        } catch (DirectoryIteratorException e) {
+            throw new IllegalStateException("Fail to list files in " + root.normalize().toAbsolutePath().toString(), e.getCause());
         }
+        return paths.stream();
     }
 
     @SafeVarargs
@@ -46,4 +151,37 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * Hard link {@code source} as {@code target}, or copy it with attributes when link is not possible
+     * (other file store or file system, no links support).
+     *
+     * @return {@code true} if link is created
+     */
+    static boolean linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException | ProviderMismatchException | SecurityException ignored) {
+            Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+            return false;
+        }
+    }
+
+    static void deleteRecursively(Path root) {
+        try (
+                Stream<Path> paths = Files.walk(root)
+        ) {
+            paths
+                    .sorted(Comparator.reverseOrder())
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException ignored) {
+                        }
+                    });
+        } catch (IOException ignored) {
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package com.github.valery1707.mongo.bundle;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cumulative counters of events, published as MXBean {@value #OBJECT_NAME} by {@link #register()}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class JmxBundleListener implements BundleListener, BundleMetricsMXBean {
+    public static final String OBJECT_NAME = "com.github.valery1707.mongo.bundle:type=BundleMetrics";
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder entriesSkipped = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseCounts = new EnumMap<>(Phase.class);
+    private final Map<String, LongAdder> sourceWins = new ConcurrentHashMap<>();
+
+    public JmxBundleListener() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+            phaseCounts.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Create listener and register it in platform MBean server.
+     */
+    public static JmxBundleListener register() {
+        JmxBundleListener listener = new JmxBundleListener();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(listener, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(listener, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Fail to register MBean " + OBJECT_NAME, e);
+        }
+        return listener;
+    }
+
+    @Override
+    public void onPhase(Phase phase, String subject, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+        phaseCounts.get(phase).increment();
+    }
+
+    @Override
+    public void onBytes(String subject, long read, long written) {
+        bytesRead.add(read);
+        bytesWritten.add(written);
+    }
+
+    @Override
+    public void onSkipped(String subject, long entries) {
+        entriesSkipped.add(entries);
+    }
+
+    @Override
+    public void onCacheHit(String key) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void onCacheMiss(String key) {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void onSource(String subject, String source, long nanos) {
+        sourceWins.computeIfAbsent(source, key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getEntriesSkipped() {
+        return entriesSkipped.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return phaseNanos.get(Phase.LOCK_WAIT).sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        return snapshot(phaseNanos::get);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        return snapshot(phaseCounts::get);
+    }
+
+    @Override
+    public Map<String, Long> getSourceWins() {
+        Map<String, Long> values = new TreeMap<>();
+        sourceWins.forEach((source, counter) -> values.put(source, counter.sum()));
+        return values;
+    }
+
+    private static Map<String, Long> snapshot(Function<Phase, LongAdder> counter) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.name(), counter.apply(phase).sum());
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        bytesRead.reset();
+        bytesWritten.reset();
+        entriesSkipped.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        phaseNanos.values().forEach(LongAdder::reset);
+        phaseCounts.values().forEach(LongAdder::reset);
+        sourceWins.values().forEach(LongAdder::reset);
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Print every event as single line, without any logging framework.
+ */
+public class LoggingBundleListener implements BundleListener {
+    private final PrintStream out;
+
+    public LoggingBundleListener(PrintStream out) {
+        this.out = out;
+    }
+
+    public LoggingBundleListener() {
+        this(System.err);
+    }
+
+    @Override
+    public void onPhase(Phase phase, String subject, long nanos) {
+        out.println(String.format(Locale.ROOT, "[mongo-bundle] %s %s: %.3f ms", phase, subject, nanos / 1_000_000.0));
+    }
+
+    @Override
+    public void onBytes(String subject, long read, long written) {
+        out.println(String.format(Locale.ROOT, "[mongo-bundle] BYTES %s: read %d, written %d", subject, read, written));
+    }
+
+    @Override
+    public void onSkipped(String subject, long entries) {
+        out.println(String.format(Locale.ROOT, "[mongo-bundle] SKIPPED %s: %d entries", subject, entries));
+    }
+
+    @Override
+    public void onCacheHit(String key) {
+        out.println("[mongo-bundle] CACHE_HIT " + key);
+    }
+
+    @Override
+    public void onCacheMiss(String key) {
+        out.println("[mongo-bundle] CACHE_MISS " + key);
+    }
+
+    @Override
+    public void onSource(String subject, String source, long nanos) {
+        out.println(String.format(Locale.ROOT, "[mongo-bundle] SOURCE %s: %s in %.3f ms", subject, source, nanos / 1_000_000.0));
+    }
+}
@@ -3,13 +3,28 @@ package com.github.valery1707.mongo.bundle;
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.github.valery1707.mongo.bundle.FileUtils.isReadableFile;
@@ -26,66 +41,358 @@ public final class MavenUtils {
 
     final static AtomicReference<List<Path>> repository = new AtomicReference<>();
 
+    /**
+     * Gradle cache keeps artifacts as {@code <group>/<artifact>/<version>/<sha1>/<file>}.
+     */
+    private static final String GRADLE_FILES = "files-2.1";
+
+    private static final ExecutorService LOOKUPS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "mongo-bundle-resolve");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Existing repositories in order of priority: {@code -Dmaven.repo.local}, {@code localRepository} from
+     * {@code ~/.m2/settings.xml} and from {@code $MAVEN_HOME/conf/settings.xml}, {@code ~/.m2/repository}
+     * and Gradle cache {@code $GRADLE_USER_HOME/caches/modules-2/files-2.1}.
+     */
     public static List<Path> repositoryRoots() throws IOException {
         if (repository.get() != null) {
             return repository.get();
         }
+        Optional<Path> userHome = Optional
+                .ofNullable(System.getProperty("user.home", ENV.apply("USERPROFILE")))
+                .map(FS::getPath);
+        List<Optional<Path>> candidates = new ArrayList<>();
+        //region property: maven.repo.local
+        candidates.add(Optional.ofNullable(System.getProperty("maven.repo.local")).map(FS::getPath));
+        //endregion
+        //region user settings
+        if (userHome.isPresent()) {
+            candidates.add(localRepository(userHome.get().resolve(".m2").resolve("settings.xml")));
+        }
+        //endregion
         //region env: MAVEN_HOME
         String mavenHome = System.getProperty("env.maven.home", ENV.apply("MAVEN_HOME"));
         if (mavenHome != null) {
-            Path home = FS.getPath(mavenHome);
-            Path settings = home.resolve("conf").resolve("settings.xml");
-            if (isReadableFile(settings)) {
-                extractFromXml(settings, "/settings/localRepository")
-                        .map(path -> path.replace("${user.home}", System.getProperty("user.home", ENV.apply("USERPROFILE"))))
-                        .map(FS::getPath)
-                        .filter(FileUtils::isReadableDirectory)
-                        .map(Collections::singletonList)
-                        .ifPresent(path -> repository.compareAndSet(null, path));
-                if (repository.get() != null) {
-                    return repository.get();
-                }
-            }
+            candidates.add(localRepository(FS.getPath(mavenHome).resolve("conf").resolve("settings.xml")));
         }
         //endregion
         //region env: USERPROFILE
-        Optional
-                .ofNullable(System.getProperty("user.home", ENV.apply("USERPROFILE")))
-                .map(FS::getPath)
-                .map(home -> home.resolve(".m2").resolve("repository"))
-                .filter(FileUtils::isReadableDirectory)
-                .map(Collections::singletonList)
-                .ifPresent(path -> repository.compareAndSet(null, path));
+        candidates.add(userHome.map(home -> home.resolve(".m2").resolve("repository")));
+        //endregion
+        //region env: GRADLE_USER_HOME
+        Optional<Path> gradleHome = Optional
+                .ofNullable(System.getProperty("gradle.user.home", ENV.apply("GRADLE_USER_HOME")))
+                .map(FS::getPath);
+        candidates.add((gradleHome.isPresent() ? gradleHome : userHome.map(home -> home.resolve(".gradle")))
+                .map(home -> home.resolve("caches").resolve("modules-2").resolve(GRADLE_FILES)));
         //endregion
+        List<Path> roots = candidates
+                .stream()
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .filter(FileUtils::isReadableDirectory)
+                .distinct()
+                .collect(Collectors.toList());
+        if (roots.isEmpty()) {
+            return emptyList();
+        }
+        repository.compareAndSet(null, Collections.unmodifiableList(roots));
+        return repository.get();
+    }
+
+    private static Optional<Path> localRepository(Path settings) throws IOException {
+        if (!isReadableFile(settings)) {
+            return Optional.empty();
+        }
+        return extractFromXml(settings, "/settings/localRepository")
+                .map(String::trim)
+                .map(path -> path.replace("${user.home}", System.getProperty("user.home", ENV.apply("USERPROFILE"))))
+                .map(FS::getPath);
+    }
+
+    static boolean isGradle(Path root) {
+        Path name = root.getFileName();
+        return name != null && name.toString().equals(GRADLE_FILES);
+    }
+
+    /**
+     * Resolved libraries with modification times of watched directories at resolution moment.
+     */
+    final static Map<List<Object>, Resolution> resolved = new ConcurrentHashMap<>();
 
-        return repository.get() != null ? repository.get() : emptyList();
+    static final class Resolution {
+        private final Optional<Candidate> library;
+        private final List<Path> watched;
+        private final List<Optional<FileTime>> stamps;
+
+        Resolution(Optional<Candidate> library, List<Path> watched, List<Optional<FileTime>> stamps) {
+            this.library = library;
+            this.watched = watched;
+            this.stamps = stamps;
+        }
+
+        boolean isValid() {
+            return stamps.equals(stamps(watched));
+        }
+    }
+
+    private static List<Optional<FileTime>> stamps(List<Path> paths) {
+        return paths
+                .stream()
+                .map(path -> {
+                    try {
+                        return Optional.of(Files.getLastModifiedTime(path));
+                    } catch (IOException e) {
+                        return Optional.<FileTime>empty();
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static Path artifactDirectory(Path root, String group, String artifact) {
+        if (isGradle(root)) {
+            return root.resolve(group).resolve(artifact);
+        }
+        return Stream.of(group.split("\\.")).reduce(root, Path::resolve, (p1, p2) -> p1).resolve(artifact);
     }
 
+    /**
+     * Memoized library lookup: cached result (including miss) is reused until modification time
+     * of any artifact directory or of directory with found library is changed.
+     */
     public static Optional<Path> findLibrary(String group, String artifact, String version, String classifier, boolean snapshot) throws IOException {
-        Stream<String> groupNames = Stream.of(group.split("\\."));
-        return repositoryRoots()
+        long start = System.nanoTime();
+        try {
+            return findLibrary(repositoryRoots(), group, artifact, version, classifier, snapshot);
+        } finally {
+            BundleMetrics.phase(BundleListener.Phase.RESOLVE, group + ":" + artifact + ":" + version + classifier, start);
+        }
+    }
+
+    /**
+     * Several roots are searched concurrently: first found release wins, snapshot is the latest one of all roots.
+     */
+    private static Optional<Path> findLibrary(List<Path> roots, String group, String artifact, String version, String classifier, boolean snapshot) throws IOException {
+        if (roots.isEmpty()) {
+            return Optional.empty();
+        }
+        if (roots.size() == 1) {
+            return findLibrary(roots.get(0), group, artifact, version, classifier, snapshot).map(Candidate::getFile);
+        }
+        List<CompletableFuture<Optional<Candidate>>> lookups = roots
                 .stream()
-                //group
-                .map(root -> groupNames.reduce(root, Path::resolve, (p1, p2) -> p1))
-                //artifact
-                .map(path -> path.resolve(artifact))
+                .map(root -> CompletableFuture.supplyAsync(() -> findLibrary(root, group, artifact, version, classifier, snapshot), LOOKUPS))
+                .collect(Collectors.toList());
+        CompletableFuture<Void> all = CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]));
+        if (snapshot) {
+            SingleFlight.await(all);
+            return lookups
+                    .stream()
+                    .map(CompletableFuture::join)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .max(Comparator.comparing(Candidate::getTime))
+                    .map(Candidate::getFile);
+        }
+        CompletableFuture<Optional<Candidate>> first = new CompletableFuture<>();
+        lookups.forEach(lookup -> lookup.thenAccept(found -> {
+            if (found.isPresent()) {
+                first.complete(found);
+            }
+        }));
+        all.whenComplete((ignored, e) -> {
+            if (e != null) {
+                first.completeExceptionally(e);
+            } else {
+                first.complete(Optional.empty());
+            }
+        });
+        return SingleFlight.await(first).map(Candidate::getFile);
+    }
+
+    /**
+     * Lookup in single root, memoized per root.
+     */
+    private static Optional<Candidate> findLibrary(Path root, String group, String artifact, String version, String classifier, boolean snapshot) {
+        List<Object> key = Arrays.asList(root, group, artifact, version, classifier, snapshot);
+        Resolution cached = resolved.get(key);
+        if (cached != null && cached.isValid()) {
+            return cached.library;
+        }
+        List<Path> watched = new ArrayList<>();
+        watched.add(artifactDirectory(root, group, artifact));
+        //Stamps are taken before lookup: concurrent modification will invalidate result on next call
+        List<Optional<FileTime>> stamps = new ArrayList<>(stamps(watched));
+        List<Path> scanned = new ArrayList<>();
+        Optional<Candidate> library = isGradle(root)
+                ? resolveGradleLibrary(watched.get(0), artifact, version, classifier, snapshot, scanned)
+                : resolveLibrary(watched.get(0), artifact, version, classifier, snapshot, scanned);
+        List<Path> directories = new ArrayList<>();
+        if (library.isPresent()) {
+            directories.add(library.get().getFile().getParent());
+            if (isGradle(root)) {
+                //New checksum directory of same version
+                directories.add(library.get().getFile().getParent().getParent());
+            }
+        } else {
+            //Library added later into existing version directory does not touch artifact directory
+            directories.addAll(scanned);
+        }
+        watched.addAll(directories);
+        stamps.addAll(stamps(directories));
+        resolved.put(key, new Resolution(library, watched, stamps));
+        return library;
+    }
+
+    /**
+     * @param scanned collector of version directories which were looked into
+     */
+    private static Optional<Candidate> resolveLibrary(Path artifactDirectory, String artifact, String version, String classifier, boolean snapshot, List<Path> scanned) {
+        if (!snapshot) {
+            scanned.add(artifactDirectory.resolve(version));
+            //version-file: missing version-dir is detected by same attributes read
+            return Optional
+                    .of(artifactDirectory.resolve(version).resolve(artifact + "-" + version + classifier))
+                    .filter(FileUtils::isReadableFile)
+                    .map(file -> new Candidate(file, Instant.EPOCH));
+        }
+        return FileUtils
                 //version-dir
-                .flatMap(path -> !snapshot ? Stream.of(
-                        path.resolve(version)
-                ) : FileUtils.list(path
-                        , t -> t.getName(t.getNameCount() - 1).toString().startsWith(version + "-")
-                ))
-                .filter(FileUtils::isReadableDirectory)
+                .scan(artifactDirectory, FileUtils.escapeGlob(version + "-") + "*")
+                .stream()
+                .filter(FileUtils.Scanned::isDirectory)
+                .peek(path -> scanned.add(path.getPath()))
+                //version-file
+                .flatMap(path -> snapshotCandidates(path.getPath(), artifact, version, classifier))
+                //get last
+                .max(Comparator.comparing(Candidate::getTime))
+                ;
+    }
+
+    /**
+     * Gradle cache has no metadata, files are found in checksum directories of version.
+     *
+     * @param scanned collector of version and checksum directories which were looked into
+     */
+    private static Optional<Candidate> resolveGradleLibrary(Path artifactDirectory, String artifact, String version, String classifier, boolean snapshot, List<Path> scanned) {
+        if (!snapshot) {
+            scanned.add(artifactDirectory.resolve(version));
+            return FileUtils
+                    .scan(artifactDirectory.resolve(version), "*")
+                    .stream()
+                    .filter(FileUtils.Scanned::isDirectory)
+                    .peek(checksum -> scanned.add(checksum.getPath()))
+                    .map(checksum -> checksum.getPath().resolve(artifact + "-" + version + classifier))
+                    .filter(FileUtils::isReadableFile)
+                    .findFirst()
+                    .map(file -> new Candidate(file, Instant.EPOCH));
+        }
+        return FileUtils
+                //version-dir
+                .scan(artifactDirectory, FileUtils.escapeGlob(version + "-") + "*")
+                .stream()
+                .filter(FileUtils.Scanned::isDirectory)
+                .peek(path -> scanned.add(path.getPath()))
+                //checksum-dir
+                .flatMap(path -> FileUtils.scan(path.getPath(), "*").stream())
+                .filter(FileUtils.Scanned::isDirectory)
+                .peek(path -> scanned.add(path.getPath()))
                 //version-file
-                .flatMap(path -> !snapshot ? Stream.of(
-                        path.resolve(artifact + "-" + version + classifier)
-                ) : FileUtils.list(path
-                        , t -> t.getName(t.getNameCount() - 1).toString().startsWith(artifact + "-" + version + "-")
-                        , t -> t.getName(t.getNameCount() - 1).toString().endsWith(classifier)
-                ))
-                .filter(FileUtils::isReadableFile)
+                .flatMap(path -> fileCandidates(path.getPath(), artifact, version, classifier))
                 //get last
-                .max(Comparator.comparing(FileUtils::getLastModifiedTime))
+                .max(Comparator.comparing(Candidate::getTime))
                 ;
     }
+
+    static final class Candidate {
+        private final Path file;
+        private final Instant time;
+
+        Candidate(Path file, Instant time) {
+            this.file = file;
+            this.time = time;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        Instant getTime() {
+            return time;
+        }
+    }
+
+    private static final String METADATA_LAST_UPDATED = "/metadata/versioning/lastUpdated";
+    private static final String METADATA_TIMESTAMP = "/metadata/versioning/snapshot/timestamp";
+    private static final String METADATA_BUILD_NUMBER = "/metadata/versioning/snapshot/buildNumber";
+    private static final DateTimeFormatter METADATA_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    /**
+     * Library file of version directory: exact file and its update time are taken from {@code maven-metadata-*.xml}
+     * when it exists, otherwise files are scanned and ordered by modification time.
+     */
+    private static Stream<Candidate> snapshotCandidates(Path directory, String artifact, String version, String classifier) {
+        Optional<Candidate> metadata = FileUtils
+                .scan(directory, "maven-metadata-*.xml")
+                .stream()
+                .filter(FileUtils.Scanned::isFile)
+                .map(file -> fromMetadata(directory, file.getPath(), artifact, classifier))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .max(Comparator.comparing(Candidate::getTime));
+        if (metadata.isPresent()) {
+            return Stream.of(metadata.get());
+        }
+        return fileCandidates(directory, artifact, version, classifier);
+    }
+
+    /**
+     * Snapshot qualifier between version and classifier: {@code SNAPSHOT} or {@code <timestamp>-<buildNumber>},
+     * so lookup of aggregate jar does not match classifier jars like {@code -SNAPSHOT-osx-64.jar}.
+     */
+    private static final Pattern SNAPSHOT_QUALIFIER = Pattern.compile("SNAPSHOT|[^-]+-\\d+");
+
+    private static Stream<Candidate> fileCandidates(Path directory, String artifact, String version, String classifier) {
+        String prefix = artifact + "-" + version + "-";
+        return FileUtils
+                .scan(directory, FileUtils.escapeGlob(prefix) + "*" + FileUtils.escapeGlob(classifier))
+                .stream()
+                .filter(file -> {
+                    String name = file.getPath().getFileName().toString();
+                    return SNAPSHOT_QUALIFIER.matcher(name.substring(prefix.length(), name.length() - classifier.length())).matches();
+                })
+                //Modification time is taken from attributes read by scan
+                .filter(file -> file.isFile() && Files.isReadable(file.getPath()))
+                .map(file -> new Candidate(file.getPath(), file.getLastModifiedTime().toInstant()));
+    }
+
+    private static Optional<Candidate> fromMetadata(Path directory, Path metadata, String artifact, String classifier) {
+        Map<String, String> values;
+        try {
+            values = extractFromXml(metadata, Arrays.asList(METADATA_LAST_UPDATED, METADATA_TIMESTAMP, METADATA_BUILD_NUMBER));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        String lastUpdated = values.get(METADATA_LAST_UPDATED);
+        if (lastUpdated == null) {
+            return Optional.empty();
+        }
+        String directoryVersion = directory.getName(directory.getNameCount() - 1).toString();
+        //Snapshot from remote repository is stored with timestamp and build number instead of "SNAPSHOT"
+        String fileVersion = values.containsKey(METADATA_TIMESTAMP) && values.containsKey(METADATA_BUILD_NUMBER)
+                ? directoryVersion.replaceFirst("-SNAPSHOT$", "") + "-" + values.get(METADATA_TIMESTAMP) + "-" + values.get(METADATA_BUILD_NUMBER)
+                : directoryVersion;
+        Path file = directory.resolve(artifact + "-" + fileVersion + classifier);
+        if (!isReadableFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new Candidate(file, Instant.from(METADATA_TIME_FORMAT.parse(lastUpdated.trim()))));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.io.directories.PropertyOrPlatformTempDir;
+import de.flapdoodle.embed.process.store.IDownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static de.flapdoodle.embed.process.io.file.Files.createTempFile;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Downloader from local or LAN mirror of upstream distributions: directory or URL with layout of download path,
+ * for example {@code <mirror>/linux/mongodb-linux-x86_64-3.4.3.tgz}.
+ */
+@SuppressWarnings("UnnecessarySemicolon")
+public class MirrorDownloader implements IDownloader {
+    private final String mirror;
+
+    /**
+     * @param mirror directory or {@code http:}, {@code https:} or {@code file:} URL
+     */
+    public MirrorDownloader(String mirror) {
+        this.mirror = mirror.endsWith("/") ? mirror : mirror + "/";
+    }
+
+    public String getMirror() {
+        return mirror;
+    }
+
+    private boolean isUrl() {
+        return mirror.matches("(?i)^(https?|file):.*");
+    }
+
+    @Override
+    public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+        String path = config.getPackageResolver().getPath(distribution);
+        return isUrl()
+                ? mirror + path
+                : Paths.get(mirror).resolve(path).toUri().toString();
+    }
+
+    @Override
+    public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+        File ret = createTempFile(
+                PropertyOrPlatformTempDir.defaultInstance(),
+                config.getFileNaming().nameFor(
+                        config.getDownloadPrefix(), "." + config.getPackageResolver().getArchiveType(distribution)
+                )
+        );
+        try {
+            if (isUrl()) {
+                URLConnection connection = new URL(getDownloadUrl(config, distribution)).openConnection();
+                connection.setConnectTimeout(config.getTimeoutConfig().getConnectionTimeout());
+                connection.setReadTimeout(config.getTimeoutConfig().getReadTimeout());
+                connection.setRequestProperty("User-Agent", config.getUserAgent());
+                try (
+                        InputStream input = connection.getInputStream();
+                ) {
+                    Files.copy(input, ret.toPath(), REPLACE_EXISTING);
+                }
+            } else {
+                Path file = Paths.get(mirror).resolve(config.getPackageResolver().getPath(distribution));
+                if (!FileUtils.isReadableFile(file)) {
+                    throw new NoSuchFileException(file.normalize().toAbsolutePath().toString(), null, "Distribution not found in mirror");
+                }
+                Files.copy(file, ret.toPath(), REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(ret.toPath());
+            throw e;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Minimal client of MongoDB wire protocol: runs single command with {@code OP_QUERY} on {@code <database>.$cmd},
+ * enough to ping, drop database and shut down server without driver dependency.
+ * Only loopback address is used.
+ */
+final class MongoWire {
+    private static final int OP_REPLY = 1;
+    private static final int OP_QUERY = 2004;
+    private static final int HEADER_SIZE = 16;
+    private static final int REPLY_PREFIX_SIZE = HEADER_SIZE + 20;
+    private static final AtomicInteger REQUEST_ID = new AtomicInteger();
+
+    private MongoWire() {
+    }
+
+    /**
+     * @param command ordered fields of command with {@link Integer}, {@link Boolean} or {@link String} values
+     * @throws IOException on connection failure or when server answered with error
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    static void command(int port, String database, Map<String, Object> command, int timeoutMillis) throws IOException {
+        try (
+                Socket socket = new Socket();
+        ) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            OutputStream output = socket.getOutputStream();
+            output.write(query(database + ".$cmd", document(command)));
+            output.flush();
+            checkOk(reply(socket.getInputStream()), port);
+        }
+    }
+
+    static boolean ping(int port, int timeoutMillis) {
+        try {
+            command(port, "admin", singletonMap("ping", 1), timeoutMillis);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static byte[] query(String collection, byte[] document) {
+        byte[] name = collection.getBytes(UTF_8);
+        int length = HEADER_SIZE + 4 + name.length + 1 + 4 + 4 + document.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(length).putInt(REQUEST_ID.incrementAndGet()).putInt(0).putInt(OP_QUERY);
+        //flags, full collection name, numberToSkip, numberToReturn
+        buffer.putInt(0).put(name).put((byte) 0).putInt(0).putInt(-1);
+        buffer.put(document);
+        return buffer.array();
+    }
+
+    static byte[] document(Map<String, Object> fields) {
+        ByteArrayOutputStream elements = new ByteArrayOutputStream();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            ByteBuffer element;
+            if (value instanceof Integer) {
+                element = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt((Integer) value);
+                elements.write(0x10);
+            } else if (value instanceof Boolean) {
+                element = ByteBuffer.allocate(1).put((byte) ((Boolean) value ? 1 : 0));
+                elements.write(0x08);
+            } else if (value instanceof String) {
+                byte[] string = ((String) value).getBytes(UTF_8);
+                element = ByteBuffer.allocate(4 + string.length + 1).order(ByteOrder.LITTLE_ENDIAN).putInt(string.length + 1).put(string).put((byte) 0);
+                elements.write(0x02);
+            } else {
+                throw new IllegalArgumentException("Unsupported value of " + field.getKey() + ": " + value);
+            }
+            byte[] name = field.getKey().getBytes(UTF_8);
+            elements.write(name, 0, name.length);
+            elements.write(0);
+            elements.write(element.array(), 0, element.capacity());
+        }
+        ByteBuffer document = ByteBuffer.allocate(4 + elements.size() + 1).order(ByteOrder.LITTLE_ENDIAN);
+        document.putInt(document.capacity()).put(elements.toByteArray()).put((byte) 0);
+        return document.array();
+    }
+
+    /**
+     * @return first document of reply
+     */
+    private static ByteBuffer reply(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte[] lengthBytes = new byte[4];
+        data.readFully(lengthBytes);
+        int length = ByteBuffer.wrap(lengthBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (length < REPLY_PREFIX_SIZE + 5) {
+            throw new IOException("Invalid reply length: " + length);
+        }
+        ByteBuffer message = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        message.put(lengthBytes);
+        data.readFully(message.array(), 4, length - 4);
+        if (message.getInt(12) != OP_REPLY || message.getInt(32) < 1) {
+            throw new IOException("Unexpected reply with operation " + message.getInt(12));
+        }
+        message.position(REPLY_PREFIX_SIZE);
+        return message.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Scan top-level fields of reply document for {@code ok} and {@code errmsg}.
+     */
+    static void checkOk(ByteBuffer document, int port) throws IOException {
+        int end = document.getInt(0) - 1;
+        int position = 4;
+        double ok = 0;
+        String error = null;
+        while (position < end) {
+            byte type = document.get(position++);
+            int nameStart = position;
+            while (document.get(position) != 0) {
+                position++;
+            }
+            String name = new String(document.array(), document.arrayOffset() + nameStart, position - nameStart, UTF_8);
+            position++;
+            switch (type) {
+                case 0x01:
+                    if ("ok".equals(name)) {
+                        ok = document.getDouble(position);
+                    }
+                    position += 8;
+                    break;
+                case 0x02:
+                case 0x0D:
+                case 0x0E:
+                    int stringLength = document.getInt(position);
+                    if ("errmsg".equals(name)) {
+                        error = new String(document.array(), document.arrayOffset() + position + 4, stringLength - 1, UTF_8);
+                    }
+                    position += 4 + stringLength;
+                    break;
+                case 0x03:
+                case 0x04:
+                case 0x0F:
+                    position += document.getInt(position);
+                    break;
+                case 0x05:
+                    position += 4 + 1 + document.getInt(position);
+                    break;
+                case 0x07:
+                    position += 12;
+                    break;
+                case 0x08:
+                    if ("ok".equals(name)) {
+                        ok = document.get(position) != 0 ? 1 : 0;
+                    }
+                    position += 1;
+                    break;
+                case 0x10:
+                    if ("ok".equals(name)) {
+                        ok = document.getInt(position);
+                    }
+                    position += 4;
+                    break;
+                case 0x09:
+                case 0x11:
+                case 0x12:
+                    if ("ok".equals(name)) {
+                        ok = document.getLong(position);
+                    }
+                    position += 8;
+                    break;
+                case 0x13:
+                    position += 16;
+                    break;
+                case 0x06:
+                case 0x0A:
+                case (byte) 0xFF:
+                case 0x7F:
+                    break;
+                default:
+                    throw new IOException("Unsupported type " + type + " of field " + name + " in reply from port " + port);
+            }
+        }
+        if (ok != 1) {
+            throw new IOException("Command failed on port " + port + ": " + (error != null ? error : "ok is " + ok));
+        }
+    }
+
+    /**
+     * Server closes connection without reply on shutdown.
+     */
+    static void shutdown(int port, int timeoutMillis) throws IOException {
+        Map<String, Object> command = new LinkedHashMap<>();
+        command.put("shutdown", 1);
+        command.put("force", true);
+        try {
+            command(port, "admin", command, timeoutMillis);
+        } catch (EOFException | SocketException e) {
+            //Expected: connection is closed by stopped server
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.IVersion;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.io.directories.FixedPath;
+import de.flapdoodle.embed.process.io.directories.PropertyOrPlatformTempDir;
+import de.flapdoodle.embed.process.runtime.Network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.singletonMap;
+
+/**
+ * Warm mongod instances shared between test classes and JVMs: instance is started from bundle once per version and arguments,
+ * every {@link Lease} gets own database, which is dropped on release.
+ * <p>
+ * Instances and leases are listed in {@code registry.properties} guarded by file lock, leases are kept alive by heartbeat
+ * of owning JVM. Detached reaper process ({@link #main}) drops databases of expired leases and shuts down instances
+ * which have no leases longer than idle timeout, so instances outlive single JVM but not whole build.
+ * Instances listen only on loopback address.
+ */
+@SuppressWarnings({"WeakerAccess", "UnnecessarySemicolon", "try"})
+public final class SharedMongod {
+    public static final String PROPERTY_DIR = "mongo.bundle.shared.dir";
+    public static final String PROPERTY_IDLE = "mongo.bundle.shared.idle";
+    public static final long DEFAULT_IDLE_SECONDS = 60;
+
+    static final long HEARTBEAT_MILLIS = 2_000;
+    static final long LEASE_TIMEOUT_MILLIS = 5 * HEARTBEAT_MILLIS;
+    private static final long START_TIMEOUT_MILLIS = 60_000;
+    private static final int COMMAND_TIMEOUT_MILLIS = 10_000;
+
+    private static final String REGISTRY = "registry.properties";
+    private static final String LOCK = "registry.lock";
+    private static final String INSTANCE = "instance.";
+    private static final String LEASE = "lease.";
+    private static final String REAPER = "reaper";
+
+    private static final ScheduledExecutorService HEARTBEAT = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "mongo-bundle-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Start of detached mongod process which must outlive JVM.
+     */
+    @FunctionalInterface
+    interface Launcher {
+        void launch(Distribution distribution, int port, Path directory, List<String> args) throws IOException;
+    }
+
+    private final Path root;
+    private final long idleMillis;
+    private final Launcher launcher;
+    private final boolean reaper;
+    private final Set<String> leases = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean heartbeat = new AtomicBoolean();
+
+    SharedMongod(Path root, long idleMillis, Launcher launcher, boolean reaper) {
+        this.root = root;
+        this.idleMillis = idleMillis;
+        this.launcher = launcher;
+        this.reaper = reaper;
+    }
+
+    /**
+     * @param root        directory of registry, binaries and data of instances
+     * @param idleSeconds instance without leases is shut down after this timeout
+     */
+    public SharedMongod(Path root, long idleSeconds, BundleExtractor bundle) {
+        this(root, TimeUnit.SECONDS.toMillis(idleSeconds), bundleLauncher(bundle), true);
+    }
+
+    public static SharedMongod defaultInstance() {
+        String dir = System.getProperty(PROPERTY_DIR);
+        Path root = dir != null
+                ? Paths.get(dir)
+                : PropertyOrPlatformTempDir.defaultInstance().asFile().toPath().resolve("mongo-bundle-shared");
+        return new SharedMongod(root, Long.getLong(PROPERTY_IDLE, DEFAULT_IDLE_SECONDS), new BundleExtractor());
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Database of shared instance, owned by caller until {@link #close()}.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final SharedMongod owner;
+        private final String id;
+        private final int port;
+        private final String database;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(SharedMongod owner, String id, int port, String database) {
+            this.owner = owner;
+            this.id = id;
+            this.port = port;
+            this.database = database;
+        }
+
+        public String getHost() {
+            return InetAddress.getLoopbackAddress().getHostAddress();
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public String getUri() {
+            return "mongodb://" + getHost() + ":" + port + "/" + database;
+        }
+
+        /**
+         * Drop database and release lease, instance stays warm for next lease until idle timeout.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                owner.release(this);
+            }
+        }
+    }
+
+    /**
+     * Lease unique database of instance for version and additional mongod arguments, instance is started when needed.
+     */
+    public Lease acquire(IVersion version, String... args) throws IOException {
+        Distribution distribution = Distribution.detectFor(version);
+        List<String> arguments = Arrays.asList(args);
+        String key = BundleCache.key(distribution.toString(), 0, 0, String.join(" ", arguments), "mongod");
+        String id = UUID.randomUUID().toString().replace("-", "");
+        String database = "test_" + id;
+        int port;
+        boolean spawnReaper;
+        Files.createDirectories(root);
+        try (
+                BundleCache.Lock ignored = BundleCache.lock(root.resolve(LOCK), true);
+        ) {
+            Properties registry = read();
+            long now = System.currentTimeMillis();
+            String instance = registry.getProperty(INSTANCE + key);
+            port = instance != null ? Integer.parseInt(instance.split(" ")[0]) : -1;
+            if (port < 0 || !MongoWire.ping(port, COMMAND_TIMEOUT_MILLIS)) {
+                port = start(key, distribution, arguments);
+            }
+            registry.setProperty(INSTANCE + key, port + " " + now);
+            registry.setProperty(LEASE + id, key + " " + database + " " + now);
+            //Only one reaper is alive: it refreshes own heartbeat on every sweep
+            spawnReaper = reaper && isExpired(registry.getProperty(REAPER), now);
+            if (spawnReaper) {
+                registry.setProperty(REAPER, Long.toString(now));
+            }
+            write(registry);
+        }
+        if (spawnReaper) {
+            spawnReaper();
+        }
+        leases.add(id);
+        if (heartbeat.compareAndSet(false, true)) {
+            HEARTBEAT.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return new Lease(this, id, port, database);
+    }
+
+    private int start(String key, Distribution distribution, List<String> args) throws IOException {
+        Path directory = root.resolve(key);
+        Files.createDirectories(directory.resolve("data"));
+        int port = Network.getFreeServerPort(InetAddress.getLoopbackAddress());
+        launcher.launch(distribution, port, directory, args);
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (!MongoWire.ping(port, COMMAND_TIMEOUT_MILLIS)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Fail to start mongod " + distribution + " on port " + port + " in " + directory.normalize().toAbsolutePath().toString());
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for mongod " + distribution);
+            }
+        }
+        return port;
+    }
+
+    private void release(Lease lease) throws IOException {
+        leases.remove(lease.id);
+        try {
+            MongoWire.command(lease.port, lease.database, singletonMap("dropDatabase", 1), COMMAND_TIMEOUT_MILLIS);
+        } finally {
+            try (
+                    BundleCache.Lock ignored = BundleCache.lock(root.resolve(LOCK), true);
+            ) {
+                Properties registry = read();
+                String value = (String) registry.remove(LEASE + lease.id);
+                if (value != null) {
+                    touch(registry, value.split(" ")[0], System.currentTimeMillis());
+                }
+                write(registry);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        if (leases.isEmpty()) {
+            return;
+        }
+        try (
+                BundleCache.Lock ignored = BundleCache.lock(root.resolve(LOCK), true);
+        ) {
+            Properties registry = read();
+            long now = System.currentTimeMillis();
+            for (String id : leases) {
+                String value = registry.getProperty(LEASE + id);
+                //Lease expired by reaper while JVM was paused can not be revived
+                if (value != null) {
+                    String[] parts = value.split(" ");
+                    registry.setProperty(LEASE + id, parts[0] + " " + parts[1] + " " + now);
+                }
+            }
+            write(registry);
+        } catch (IOException | RuntimeException e) {
+            //Next heartbeat will try again
+        }
+    }
+
+    /**
+     * Drop databases of expired leases and shut down idle instances.
+     *
+     * @return {@code true} while registry has instances
+     */
+    boolean sweep() throws IOException {
+        Files.createDirectories(root);
+        try (
+                BundleCache.Lock ignored = BundleCache.lock(root.resolve(LOCK), true);
+        ) {
+            Properties registry = read();
+            long now = System.currentTimeMillis();
+            for (String name : registry.stringPropertyNames()) {
+                if (!name.startsWith(LEASE)) {
+                    continue;
+                }
+                String[] lease = registry.getProperty(name).split(" ");
+                if (now - Long.parseLong(lease[2]) <= LEASE_TIMEOUT_MILLIS) {
+                    continue;
+                }
+                registry.remove(name);
+                touch(registry, lease[0], now);
+                String instance = registry.getProperty(INSTANCE + lease[0]);
+                if (instance != null) {
+                    try {
+                        MongoWire.command(Integer.parseInt(instance.split(" ")[0]), lease[1], singletonMap("dropDatabase", 1), COMMAND_TIMEOUT_MILLIS);
+                    } catch (IOException e) {
+                        //Instance is already stopped
+                    }
+                }
+            }
+            boolean remaining = false;
+            for (String name : registry.stringPropertyNames()) {
+                if (!name.startsWith(INSTANCE)) {
+                    continue;
+                }
+                String key = name.substring(INSTANCE.length());
+                String[] instance = registry.getProperty(name).split(" ");
+                boolean leased = registry.stringPropertyNames().stream()
+                        .filter(lease -> lease.startsWith(LEASE))
+                        .anyMatch(lease -> registry.getProperty(lease).startsWith(key + " "));
+                if (leased || now - Long.parseLong(instance[1]) <= idleMillis) {
+                    remaining = true;
+                    continue;
+                }
+                try {
+                    MongoWire.shutdown(Integer.parseInt(instance[0]), COMMAND_TIMEOUT_MILLIS);
+                } catch (IOException e) {
+                    //Instance is already stopped
+                }
+                registry.remove(name);
+            }
+            if (remaining) {
+                registry.setProperty(REAPER, Long.toString(now));
+            } else {
+                registry.remove(REAPER);
+            }
+            write(registry);
+            return remaining;
+        }
+    }
+
+    private static void touch(Properties registry, String key, long now) {
+        String instance = registry.getProperty(INSTANCE + key);
+        if (instance != null) {
+            registry.setProperty(INSTANCE + key, instance.split(" ")[0] + " " + now);
+        }
+    }
+
+    private static boolean isExpired(String heartbeat, long now) {
+        return heartbeat == null || now - Long.parseLong(heartbeat) > LEASE_TIMEOUT_MILLIS;
+    }
+
+    private Properties read() throws IOException {
+        Properties registry = new Properties();
+        Path file = root.resolve(REGISTRY);
+        if (FileUtils.isReadableFile(file)) {
+            try (
+                    InputStream input = Files.newInputStream(file);
+            ) {
+                registry.load(input);
+            }
+        }
+        return registry;
+    }
+
+    private void write(Properties registry) throws IOException {
+        Path temp = Files.createTempFile(root, REGISTRY, ".tmp");
+        try {
+            try (
+                    OutputStream output = Files.newOutputStream(temp);
+            ) {
+                registry.store(output, null);
+            }
+            Files.move(temp, root.resolve(REGISTRY), ATOMIC_MOVE, REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void spawnReaper() throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        new ProcessBuilder(
+                java, "-cp", System.getProperty("java.class.path"),
+                SharedMongod.class.getName(), root.toAbsolutePath().toString(), Long.toString(idleMillis)
+        )
+                .redirectErrorStream(true)
+                .redirectOutput(Redirect.appendTo(root.resolve("reaper.log").toFile()))
+                .start();
+    }
+
+    /**
+     * Start mongod with binaries extracted from bundle into {@code bin} of instance directory.
+     */
+    static Launcher bundleLauncher(BundleExtractor bundle) {
+        return (distribution, port, directory, args) -> {
+            Path bin = directory.resolve("bin");
+            FileUtils.deleteRecursively(bin);
+            Files.createDirectories(bin);
+            IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+            IExtractedFileSet files = new BundleArtifactStore(config, new FixedPath(bin.toString()), (prefix, postfix) -> postfix, bundle)
+                    .extractFileSet(distribution);
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    files.executable().getAbsolutePath(),
+                    "--port", Integer.toString(port),
+                    "--bind_ip", InetAddress.getLoopbackAddress().getHostAddress(),
+                    "--dbpath", directory.resolve("data").toAbsolutePath().toString()
+            ));
+            command.addAll(args);
+            File log = directory.resolve("mongod.log").toFile();
+            new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(Redirect.appendTo(log))
+                    .start();
+        };
+    }
+
+    /**
+     * Reaper process: sweeps registry until it has no instances.
+     *
+     * @param args registry directory and idle timeout in milliseconds
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SharedMongod registry = new SharedMongod(Paths.get(args[0]), Long.parseLong(args[1]), null, false);
+        while (registry.sweep()) {
+            Thread.sleep(HEARTBEAT_MILLIS);
+        }
+    }
+}
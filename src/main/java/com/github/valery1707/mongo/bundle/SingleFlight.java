@@ -0,0 +1,56 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Deduplication of concurrent work: callers with same key share one in-flight execution and its result.
+ * Finished execution is forgotten, so next call after failure tries again.
+ */
+final class SingleFlight<K, V> {
+    @FunctionalInterface
+    interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    V execute(K key, Loader<V> loader) throws IOException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            try {
+                future.complete(loader.load());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, future);
+            }
+            existing = future;
+        }
+        return await(existing);
+    }
+
+    static <V> V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for shared execution");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
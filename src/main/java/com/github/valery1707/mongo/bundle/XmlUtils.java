@@ -1,42 +1,94 @@
 package com.github.valery1707.mongo.bundle;
 
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
+import static java.util.Collections.singleton;
+
 public final class XmlUtils {
     private XmlUtils() {
     }
 
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
     public static Optional<String> extractFromXml(Path xml, String searchTag) throws IOException {
+        return Optional.ofNullable(extractFromXml(xml, singleton(searchTag)).get(searchTag));
+    }
+
+    /**
+     * Find text of first element for every path in single pass: parsing stops when all paths are found.
+     *
+     * @return text by path, only found paths are present
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    public static Map<String, String> extractFromXml(Path xml, Collection<String> searchTags) throws IOException {
+        Map<String, String> found = new HashMap<>();
         try (
                 InputStream stream = Files.newInputStream(xml);
         ) {
-            String name = "";
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            XMLEventReader reader = factory.createFilteredReader(
-                    factory.createXMLEventReader(stream, "UTF-8"),
-                    event -> event.isStartElement() || event.isEndElement() || event.isCharacters()
-            );
-            while (reader.hasNext()) {
-                XMLEvent event = (XMLEvent) reader.next();
-                if (event.isCharacters() && !event.asCharacters().isWhiteSpace() && searchTag.equals(name)) {
-                    return Optional.ofNullable(event.asCharacters().getData());
-                } else if (event.isStartElement()) {
-                    name += "/" + event.asStartElement().getName().getLocalPart();
-                } else if (event.isEndElement()) {
-                    name = name.substring(0, name.lastIndexOf('/'));
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(stream, "UTF-8");
+            try {
+                StringBuilder path = new StringBuilder();
+                int[] lengths = new int[16];
+                int depth = 0;
+                String current = null;
+                StringBuilder text = new StringBuilder();
+                while (found.size() < searchTags.size() && reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            if (depth == lengths.length) {
+                                int[] grown = new int[depth * 2];
+                                System.arraycopy(lengths, 0, grown, 0, depth);
+                                lengths = grown;
+                            }
+                            lengths[depth++] = path.length();
+                            path.append('/').append(reader.getLocalName());
+                            current = null;
+                            String name = path.toString();
+                            if (searchTags.contains(name) && !found.containsKey(name)) {
+                                current = name;
+                                text.setLength(0);
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if (current != null && !reader.isWhiteSpace()) {
+                                text.append(reader.getText());
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            if (current != null && text.length() > 0) {
+                                found.put(current, text.toString());
+                            }
+                            current = null;
+                            path.setLength(lengths[--depth]);
+                            break;
+                        default:
+                            break;
+                    }
                 }
+            } finally {
+                reader.close();
             }
         } catch (IOException | XMLStreamException e) {
             throw new IOException("Fail to parse xml from " + xml.normalize().toAbsolutePath().toString(), e);
         }
-        return Optional.empty();
+        return found;
     }
 }
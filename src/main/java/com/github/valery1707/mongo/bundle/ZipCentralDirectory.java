@@ -0,0 +1,226 @@
+package com.github.valery1707.mongo.bundle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Minimal reader of zip central directory: {@link java.util.zip.ZipFile} does not expose entry offsets,
+ * but they are required to copy stored entries straight from archive file.
+ */
+final class ZipCentralDirectory {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private ZipCentralDirectory() {
+    }
+
+    static final class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        boolean isStored() {
+            return method == ZipEntry.STORED;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long size;
+        private final long lastModified;
+        private final Map<String, Entry> entries;
+
+        private Snapshot(long size, long lastModified, Map<String, Entry> entries) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+    }
+
+    private static final int SNAPSHOTS_LIMIT = 64;
+    /**
+     * Central directories of archives, valid while size and modification time of archive are same.
+     */
+    private static final Map<Path, Snapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    /**
+     * Memoized central directory of archive: bundle jar is parsed once, next lookups jump straight to entry.
+     */
+    static Map<String, Entry> read(Path path, FileChannel channel) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        Path key = path.toAbsolutePath();
+        Snapshot snapshot = SNAPSHOTS.get(key);
+        if (snapshot != null && snapshot.size == attributes.size() && snapshot.lastModified == lastModified) {
+            return snapshot.entries;
+        }
+        Map<String, Entry> entries = Collections.unmodifiableMap(read(channel));
+        if (SNAPSHOTS.size() >= SNAPSHOTS_LIMIT) {
+            SNAPSHOTS.clear();
+        }
+        SNAPSHOTS.put(key, new Snapshot(attributes.size(), lastModified, entries));
+        return entries;
+    }
+
+    static Map<String, Entry> read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        //End of central directory record is followed only by comment up to 64K
+        int tailSize = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("End of central directory not found");
+        }
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long size = tail.getInt(end + 12) & ZIP64_MAGIC;
+        long offset = tail.getInt(end + 16) & ZIP64_MAGIC;
+        if (count == 0xFFFF || size == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+            long locatorPosition = fileSize - tailSize + end - ZIP64_LOCATOR_SIZE;
+            ByteBuffer locator = read(channel, locatorPosition, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+                throw new ZipException("Zip64 end of central directory locator not found");
+            }
+            ByteBuffer end64 = read(channel, locator.getLong(8), 56);
+            if (end64.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Zip64 end of central directory not found");
+            }
+            count = end64.getLong(32);
+            size = end64.getLong(40);
+            offset = end64.getLong(48);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory is too large: " + size);
+        }
+        ByteBuffer directory = read(channel, offset, (int) size);
+        Map<String, Entry> entries = new LinkedHashMap<>((int) Math.min(count * 4 / 3 + 1, Integer.MAX_VALUE));
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at " + (offset + position));
+            }
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+            long uncompressedSize = directory.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+            byte[] name = new byte[nameLength];
+            ((ByteBuffer) directory.duplicate().position(position + CENTRAL_SIZE)).get(name);
+            //Zip64 extended information contains only fields which overflow in header
+            int extra = position + CENTRAL_SIZE + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (uncompressedSize == ZIP64_MAGIC) {
+                        uncompressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            Entry entry = new Entry(new String(name, UTF_8), method, crc, compressedSize, uncompressedSize, localHeaderOffset);
+            entries.put(entry.getName(), entry);
+            position = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Position of entry data: local header can have own extra field, so it must be read.
+     */
+    static long dataOffset(FileChannel channel, Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.getLocalHeaderOffset(), LOCAL_SIZE);
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header of entry " + entry.getName());
+        }
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        return entry.getLocalHeaderOffset() + LOCAL_SIZE + nameLength + extraLength;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of archive at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
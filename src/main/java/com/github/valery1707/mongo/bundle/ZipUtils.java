@@ -1,38 +1,605 @@
 package com.github.valery1707.mongo.bundle;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
 
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
+import static com.github.valery1707.mongo.bundle.BundleListener.Phase.COPY;
+import static com.github.valery1707.mongo.bundle.BundleListener.Phase.SCAN;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 public final class ZipUtils {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private ZipUtils() {
     }
 
     @SuppressWarnings("UnnecessarySemicolon")
     public static void extract(Path path, Function<Optional<ZipEntry>, Optional<Path>> targetMapper) throws IOException {
+        String subject = path.toString();
+        long start = System.nanoTime();
+        long copyNanos = 0;
+        long written = 0;
+        long skipped = 0;
         try (
-                InputStream input = Files.newInputStream(path);
+                CountingInputStream input = new CountingInputStream(Files.newInputStream(path));
                 ZipInputStream zip = new ZipInputStream(input);
         ) {
             ZipEntry entry;
             while ((entry = zip.getNextEntry()) != null) {
                 Optional<Path> target = targetMapper.apply(Optional.of(entry));
                 if (target.isPresent()) {
+                    long copyStart = System.nanoTime();
+                    written += copy(zip, target.get());
+                    copyNanos += System.nanoTime() - copyStart;
+                } else {
+                    skipped++;
+                }
+            }
+            report(subject, start, copyNanos, input.getByteCount(), written, skipped);
+        }
+    }
+
+    private static void report(String subject, long start, long copyNanos, long read, long written, long skipped) {
+        //Phases are interleaved while archive is scanned: scan is everything except copying
+        BundleMetrics.duration(SCAN, subject, System.nanoTime() - start - copyNanos);
+        BundleMetrics.duration(COPY, subject, copyNanos);
+        BundleMetrics.bytes(subject, read, written);
+        BundleMetrics.skipped(subject, skipped);
+    }
+
+    /**
+     * Extract entries by name: random access over central directory when archive is a plain file
+     * (stored entries are transferred directly from file), otherwise scan only until every requested entry is written.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    public static void extract(Path path, Map<String, Path> targets) throws IOException {
+        Set<String> remaining = new LinkedHashSet<>(targets.keySet());
+        String subject = path.toString();
+        long start = System.nanoTime();
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            ZipFile zip = null;
+            long read = 0;
+            long written = 0;
+            try (
+                    FileChannel channel = FileChannel.open(path, READ);
+            ) {
+                Map<String, ZipCentralDirectory.Entry> directory = ZipCentralDirectory.read(path, channel);
+                BundleMetrics.phase(SCAN, subject, start);
+                long copyStart = System.nanoTime();
+                for (Map.Entry<String, Path> target : targets.entrySet()) {
+                    ZipCentralDirectory.Entry entry = directory.get(target.getKey());
+                    if (entry == null || entry.getName().endsWith("/")) {
+                        continue;
+                    }
+                    //Stored entry is a plain region of archive file: copy it without decompression and heap buffers
+                    if (zip == null && !entry.isStored()) {
+                        zip = new ZipFile(path.toFile());
+                    }
+                    written += extractEntry(channel, zip, entry, target.getValue());
+                    read += entry.getCompressedSize();
+                    remaining.remove(target.getKey());
+                }
+                BundleMetrics.phase(COPY, subject, copyStart);
+                BundleMetrics.bytes(subject, read, written);
+                BundleMetrics.skipped(subject, directory.size() - (targets.size() - remaining.size()));
+            } finally {
+                if (zip != null) {
+                    zip.close();
+                }
+            }
+        } else {
+            long copyNanos = 0;
+            long written = 0;
+            long skipped = 0;
+            try (
+                    CountingInputStream input = new CountingInputStream(Files.newInputStream(path));
+                    ZipInputStream zip = new ZipInputStream(input);
+            ) {
+                ZipEntry entry;
+                while (!remaining.isEmpty() && (entry = zip.getNextEntry()) != null) {
+                    if (remaining.remove(entry.getName())) {
+                        long copyStart = System.nanoTime();
+                        written += copy(zip, targets.get(entry.getName()));
+                        copyNanos += System.nanoTime() - copyStart;
+                    } else {
+                        skipped++;
+                    }
+                }
+                report(subject, start, copyNanos, input.getByteCount(), written, skipped);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            throw new IOException("Entries " + remaining + " not found in " + path.normalize().toAbsolutePath().toString());
+        }
+    }
+
+    /**
+     * Extract single entry and compute SHA-256 of its content while bytes are copied, without second read pass.
+     * Stored entry is copied through heap buffer instead of {@link FileChannel#transferTo}, because bytes must be seen.
+     *
+     * @param expectedSha256 expected checksum in hex, {@code null} to only compute it
+     * @return SHA-256 of extracted content in hex
+     * @throws IOException if entry is not found or checksum does not match (target is left as is)
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    public static String extract(Path path, String name, Path target, String expectedSha256) throws IOException {
+        MessageDigest digest = Digests.create(Digests.SHA_256);
+        String subject = path.toString();
+        long start = System.nanoTime();
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            try (
+                    FileChannel channel = FileChannel.open(path, READ);
+            ) {
+                ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(path, channel).get(name);
+                BundleMetrics.phase(SCAN, subject, start);
+                if (entry == null || entry.getName().endsWith("/")) {
+                    throw notFound(path, name);
+                }
+                long copyStart = System.nanoTime();
+                long size;
+                if (entry.isStored()) {
+                    size = transfer(channel, ZipCentralDirectory.dataOffset(channel, entry), entry.getSize(), target, digest);
+                } else {
                     try (
-                            OutputStream output = Files.newOutputStream(target.get());
+                            ZipFile zip = new ZipFile(path.toFile());
                     ) {
-                        IOUtils.copy(zip, output);
+                        size = extractEntry(channel, zip, entry, target, digest);
+                    }
+                }
+                BundleMetrics.phase(COPY, subject, copyStart);
+                BundleMetrics.bytes(subject, entry.getCompressedSize(), size);
+            }
+        } else {
+            try (
+                    InputStream input = open(path, name);
+            ) {
+                BundleMetrics.phase(SCAN, subject, start);
+                long copyStart = System.nanoTime();
+                long size = copy(new DigestInputStream(input, digest), target);
+                BundleMetrics.phase(COPY, subject, copyStart);
+                BundleMetrics.bytes(subject, size, size);
+            }
+        }
+        String actual = Digests.hex(digest.digest());
+        Digests.verify(expectedSha256, actual, path.normalize().toAbsolutePath().toString() + "!/" + name);
+        return actual;
+    }
+
+    /**
+     * Outcome of extraction of single entry by {@link #extractConcurrently}.
+     */
+    public static final class Extracted {
+        private final String name;
+        private final Path target;
+        private final long size;
+        private final IOException failure;
+
+        private Extracted(String name, Path target, long size, IOException failure) {
+            this.name = name;
+            this.target = target;
+            this.size = size;
+            this.failure = failure;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getTarget() {
+            return target;
+        }
+
+        /**
+         * @return count of written bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public Optional<IOException> getFailure() {
+            return Optional.ofNullable(failure);
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+    }
+
+    /**
+     * Extract entries by name concurrently, with at most {@code parallelism} entries at once.
+     *
+     * @see #extractConcurrently(Path, Map, Executor)
+     */
+    public static Map<String, Extracted> extractConcurrently(Path path, Map<String, Path> targets, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, targets.size())), task -> {
+            Thread thread = new Thread(task, "mongo-bundle-extract");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return extractConcurrently(path, targets, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extract entries by name concurrently on {@code executor}: central directory is read once,
+     * then every entry is copied from own region of archive file independently of others.
+     * Archive outside of default file system is scanned sequentially.
+     *
+     * @return results in order of {@code targets}, failure of one entry does not stop others
+     * @throws IOException if archive itself can not be read
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    public static Map<String, Extracted> extractConcurrently(Path path, Map<String, Path> targets, Executor executor) throws IOException {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            return extractSequentially(path, targets);
+        }
+        String subject = path.toString();
+        long start = System.nanoTime();
+        try (
+                FileChannel channel = FileChannel.open(path, READ);
+        ) {
+            Map<String, ZipCentralDirectory.Entry> directory = ZipCentralDirectory.read(path, channel);
+            BundleMetrics.phase(SCAN, subject, start);
+            boolean deflated = targets
+                    .keySet()
+                    .stream()
+                    .map(directory::get)
+                    .anyMatch(entry -> entry != null && !entry.isStored());
+            //ZipFile is safe for concurrent reading of different entries
+            try (
+                    ZipFile zip = deflated ? new ZipFile(path.toFile()) : null;
+            ) {
+                Map<String, CompletableFuture<Extracted>> futures = new LinkedHashMap<>();
+                for (Map.Entry<String, Path> target : targets.entrySet()) {
+                    String name = target.getKey();
+                    ZipCentralDirectory.Entry entry = directory.get(name);
+                    futures.put(name, CompletableFuture.supplyAsync(() -> {
+                        long copyStart = System.nanoTime();
+                        try {
+                            if (entry == null || entry.getName().endsWith("/")) {
+                                throw notFound(path, name);
+                            }
+                            long size = extractEntry(channel, zip, entry, target.getValue());
+                            BundleMetrics.phase(COPY, subject + "!/" + name, copyStart);
+                            BundleMetrics.bytes(subject + "!/" + name, entry.getCompressedSize(), size);
+                            return new Extracted(name, target.getValue(), size, null);
+                        } catch (IOException e) {
+                            return new Extracted(name, target.getValue(), 0, e);
+                        }
+                    }, executor));
+                }
+                BundleMetrics.skipped(subject, directory.size() - targets.keySet().stream().filter(directory::containsKey).count());
+                Map<String, Extracted> results = new LinkedHashMap<>();
+                for (Map.Entry<String, CompletableFuture<Extracted>> future : futures.entrySet()) {
+                    results.put(future.getKey(), SingleFlight.await(future.getValue()));
+                }
+                return results;
+            }
+        }
+    }
+
+    private static long extractEntry(FileChannel channel, ZipFile zip, ZipCentralDirectory.Entry entry, Path target) throws IOException {
+        return extractEntry(channel, zip, entry, target, null);
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static long extractEntry(FileChannel channel, ZipFile zip, ZipCentralDirectory.Entry entry, Path target, MessageDigest digest) throws IOException {
+        if (entry.isStored() && digest == null) {
+            //Positional transfer does not touch channel position, so channel is shared between threads
+            transfer(channel, ZipCentralDirectory.dataOffset(channel, entry), entry.getSize(), target);
+            return entry.getSize();
+        }
+        if (entry.isStored()) {
+            return transfer(channel, ZipCentralDirectory.dataOffset(channel, entry), entry.getSize(), target, digest);
+        }
+        try (
+                InputStream input = zip.getInputStream(zip.getEntry(entry.getName()));
+        ) {
+            return copy(digest != null ? new DigestInputStream(input, digest) : input, target);
+        }
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static Map<String, Extracted> extractSequentially(Path path, Map<String, Path> targets) throws IOException {
+        Map<String, Extracted> results = new LinkedHashMap<>();
+        try (
+                InputStream input = Files.newInputStream(path);
+                ZipInputStream zip = new ZipInputStream(input);
+        ) {
+            ZipEntry entry;
+            while (results.size() < targets.size() && (entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                Path target = targets.get(name);
+                if (target != null && !results.containsKey(name)) {
+                    Extracted result;
+                    try {
+                        result = new Extracted(name, target, copy(zip, target), null);
+                    } catch (IOException e) {
+                        //Target can not be written, but archive still can be read
+                        result = new Extracted(name, target, 0, e);
                     }
+                    results.put(name, result);
                 }
             }
         }
+        Map<String, Extracted> ordered = new LinkedHashMap<>();
+        targets.forEach((name, target) -> ordered.put(name, results.getOrDefault(name, new Extracted(name, target, 0, notFound(path, name)))));
+        return ordered;
+    }
+
+    /**
+     * Extract single entry into memory: stored entry is read straight from archive file into buffer,
+     * without intermediate file or heap copy.
+     *
+     * @param allocator buffer with {@code size} bytes remaining, for example pooled direct buffer
+     * @return buffer with content of entry between position and limit
+     */
+    public static ByteBuffer read(Path path, String name, IntFunction<ByteBuffer> allocator) throws IOException {
+        return read(path, name, allocator, buffer -> {
+        });
+    }
+
+    /**
+     * Same as {@link #read(Path, String, IntFunction)}, but allocated buffer is handed to {@code release} when reading fails.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    public static ByteBuffer read(Path path, String name, IntFunction<ByteBuffer> allocator, Consumer<ByteBuffer> release) throws IOException {
+        String subject = path.toString();
+        long start = System.nanoTime();
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            try (
+                    InputStream input = open(path, name);
+            ) {
+                BundleMetrics.phase(SCAN, subject, start);
+                long copyStart = System.nanoTime();
+                byte[] content = IOUtils.toByteArray(input);
+                ByteBuffer buffer = allocator.apply(content.length);
+                try {
+                    buffer.put(content).flip();
+                } catch (RuntimeException e) {
+                    release.accept(buffer);
+                    throw e;
+                }
+                BundleMetrics.phase(COPY, subject, copyStart);
+                BundleMetrics.bytes(subject, content.length, content.length);
+                return buffer;
+            }
+        }
+        try (
+                FileChannel channel = FileChannel.open(path, READ);
+        ) {
+            ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(path, channel).get(name);
+            BundleMetrics.phase(SCAN, subject, start);
+            if (entry == null || entry.getName().endsWith("/")) {
+                throw notFound(path, name);
+            }
+            if (entry.getSize() > Integer.MAX_VALUE - 8) {
+                throw new IOException("Entry " + name + " is too large for memory: " + entry.getSize());
+            }
+            long copyStart = System.nanoTime();
+            ByteBuffer buffer = allocator.apply((int) entry.getSize());
+            try {
+                if (entry.isStored()) {
+                    long position = ZipCentralDirectory.dataOffset(channel, entry);
+                    while (buffer.hasRemaining()) {
+                        int read = channel.read(buffer, position);
+                        if (read < 0) {
+                            throw new EOFException("Unexpected end of entry " + name + " in " + path.normalize().toAbsolutePath().toString());
+                        }
+                        position += read;
+                    }
+                } else {
+                    try (
+                            ZipFile zip = new ZipFile(path.toFile());
+                            ReadableByteChannel input = Channels.newChannel(zip.getInputStream(zip.getEntry(name)));
+                    ) {
+                        while (buffer.hasRemaining()) {
+                            if (input.read(buffer) < 0) {
+                                throw new EOFException("Unexpected end of entry " + name + " in " + path.normalize().toAbsolutePath().toString());
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                release.accept(buffer);
+                throw e;
+            }
+            buffer.flip();
+            BundleMetrics.phase(COPY, subject, copyStart);
+            BundleMetrics.bytes(subject, entry.getCompressedSize(), entry.getSize());
+            return buffer;
+        }
+    }
+
+    /**
+     * @return uncompressed size of entry from memoized central directory, {@code -1} when it is unknown
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    static long size(Path path, String name) throws IOException {
+        if (path.getFileSystem() != FileSystems.getDefault()) {
+            return -1;
+        }
+        try (
+                FileChannel channel = FileChannel.open(path, READ);
+        ) {
+            ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(path, channel).get(name);
+            return entry != null ? entry.getSize() : -1;
+        }
+    }
+
+    /**
+     * Check presence of entry without reading its content: default file system is answered by memoized central directory.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    static boolean contains(Path path, String name) throws IOException {
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            try (
+                    FileChannel channel = FileChannel.open(path, READ);
+            ) {
+                ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(path, channel).get(name);
+                return entry != null && !entry.getName().endsWith("/");
+            }
+        }
+        try (
+                ZipInputStream zip = new ZipInputStream(Files.newInputStream(path));
+        ) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals(name) && !entry.isDirectory()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Open stream of single entry: stored entry is read directly from its region of archive file.
+     */
+    @SuppressWarnings("resource")
+    public static InputStream open(Path path, String name) throws IOException {
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            FileChannel channel = FileChannel.open(path, READ);
+            try {
+                ZipCentralDirectory.Entry entry = ZipCentralDirectory.read(path, channel).get(name);
+                if (entry == null || entry.getName().endsWith("/")) {
+                    throw notFound(path, name);
+                }
+                if (entry.isStored()) {
+                    channel.position(ZipCentralDirectory.dataOffset(channel, entry));
+                    return new BoundedInputStream(Channels.newInputStream(channel), entry.getSize());
+                }
+                channel.close();
+                ZipFile zip = new ZipFile(path.toFile());
+                try {
+                    return new FilterInputStream(zip.getInputStream(zip.getEntry(name))) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                zip.close();
+                            }
+                        }
+                    };
+                } catch (IOException | RuntimeException e) {
+                    zip.close();
+                    throw e;
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        ZipInputStream zip = new ZipInputStream(Files.newInputStream(path));
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals(name)) {
+                    return zip;
+                }
+            }
+            throw notFound(path, name);
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    private static IOException notFound(Path path, String name) {
+        return new NoSuchFileException(name, null, "Entries [" + name + "] not found in " + path.normalize().toAbsolutePath().toString());
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static void transfer(FileChannel source, long position, long size, Path target) throws IOException {
+        try (
+                FileChannel output = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING);
+        ) {
+            long done = 0;
+            while (done < size) {
+                long count = source.transferTo(position + done, size - done, output);
+                if (count <= 0) {
+                    throw new EOFException("Unexpected end of archive at " + (position + done));
+                }
+                done += count;
+            }
+        }
+    }
+
+    /**
+     * Positional copy through heap buffer with digest update, channel position is not touched.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static long transfer(FileChannel source, long position, long size, Path target, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(size, 1)));
+        try (
+                FileChannel output = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING);
+        ) {
+            long done = 0;
+            while (done < size) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - done));
+                if (source.read(buffer, position + done) < 0) {
+                    throw new EOFException("Unexpected end of archive at " + (position + done));
+                }
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                done += buffer.limit();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+            }
+        }
+        return size;
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static long copy(InputStream input, Path target) throws IOException {
+        try (
+                OutputStream output = Files.newOutputStream(target);
+        ) {
+            return IOUtils.copyLarge(input, output);
+        }
     }
 }
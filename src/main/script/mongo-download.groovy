@@ -6,25 +6,53 @@ import de.flapdoodle.embed.process.config.store.FileSet
 import de.flapdoodle.embed.process.config.store.IPackageResolver
 import de.flapdoodle.embed.process.distribution.*
 import de.flapdoodle.embed.process.store.Downloader
-import org.apache.commons.io.FileUtils
+import org.apache.commons.compress.archivers.ArchiveInputStream
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream
+
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.zip.GZIPOutputStream
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING
 
 def versionRaw = properties['mongo.version'] as String
+def versionsRaw = properties['mongo.versions'] as String
+def layoutRaw = properties['mongo.bundle.layout'] as String
 def rootRaw = properties['bundle.root'] as String
-println "Requested MongoDb distribution for version $versionRaw into $rootRaw"
+def workRaw = properties['bundle.work'] as String
+def threadsRaw = properties['mongo.download.threads'] as String
+def downloadPathRaw = properties['mongo.download.path'] as String
+def versionsList = (versionsRaw ?: versionRaw).split(",").collect { it.trim() }.findAll { it }
+def layout = layoutRaw ?: "archive"
+if (!(layout in ["archive", "blobs"])) {
+    throw new IllegalArgumentException("Unknown bundle layout: $layout")
+}
+println "Requested MongoDb distribution for versions $versionsList into $rootRaw with $layout layout"
 
-def versionInt = versionRaw.find("\\d") ? "V" + versionRaw.replace('.', '_') : versionRaw
-IVersion version
-try {
-    version = Version.Main.valueOf(versionInt)
-} catch (IllegalArgumentException ignored) {
-    version = Version.valueOf(versionInt)
+def versions = versionsList.collect { String raw ->
+    def versionInt = raw.find("\\d") ? "V" + raw.replace('.', '_') : raw
+    try {
+        return Version.Main.valueOf(versionInt) as IVersion
+    } catch (IllegalArgumentException ignored) {
+        return Version.valueOf(versionInt) as IVersion
+    }
 }
 
 def root = new File(rootRaw, "mongo")
+//Blobs layout keeps original archives outside of bundle
+def work = layout == "blobs" ? new File(workRaw ?: new File(rootRaw, "../mongo-archives").path) : root
 
 def baseResolver = new Paths(Command.MongoD)
 def subResolvers = Command.values().collect {new Paths(it)}
-def downloadConfig = new DownloadConfigBuilder()
+def downloadConfigBuilder = new DownloadConfigBuilder()
         .defaults()
         .packageResolver(new IPackageResolver() {
     @Override
@@ -48,26 +76,248 @@ def downloadConfig = new DownloadConfigBuilder()
         return baseResolver.getPath(distribution)
     }
 })
-        .build()
+if (downloadPathRaw) {
+    //Alternative distribution source, for example local mirror or HTTP stand-in
+    downloadConfigBuilder.downloadPath(downloadPathRaw)
+}
+def downloadConfig = downloadConfigBuilder.build()
+
+def threads = threadsRaw ? threadsRaw as int : Runtime.runtime.availableProcessors()
+println "Download with $threads threads"
+
+//Only HTTP mirrors support ranges and response codes, other URLs (for example "file:") are plainly copied
+def isHttp = { String url -> url ==~ /(?i)https?:.*/ }
+
+def open = { String url, long offset ->
+    def connection = new URL(url).openConnection()
+    connection.connectTimeout = downloadConfig.timeoutConfig.connectionTimeout
+    connection.readTimeout = downloadConfig.timeoutConfig.readTimeout
+    connection.setRequestProperty("User-Agent", downloadConfig.userAgent)
+    if (offset > 0) {
+        connection.setRequestProperty("Range", "bytes=$offset-")
+    }
+    return connection
+}
+
+def close = { URLConnection connection ->
+    if (connection instanceof HttpURLConnection) {
+        connection.disconnect()
+    }
+}
+
+def digest = { File file, String algorithm ->
+    def md = MessageDigest.getInstance(algorithm)
+    file.eachByte(64 * 1024) { byte[] buffer, int length -> md.update(buffer, 0, length) }
+    return md.digest().encodeHex().toString()
+}
+
+//Published checksum files contain "<hash>  <file name>"
+def checksum = { String url ->
+    for (algorithm in [["SHA-256", ".sha256"], ["MD5", ".md5"]]) {
+        def connection = open(url + algorithm[1], 0)
+        try {
+            if (!(connection instanceof HttpURLConnection) || connection.responseCode == HttpURLConnection.HTTP_OK) {
+                return [algorithm[0], connection.inputStream.text.trim().split(/\s+/)[0].toLowerCase()]
+            }
+        } catch (FileNotFoundException ignored) {
+            //Checksum is not published in mirror
+        } finally {
+            close(connection)
+        }
+    }
+    return null
+}
+
+//Checksum of archive is stored next to it, so runtime verifies extracted archive without second read
+def record = { File target, String sha256 ->
+    def file = new File(target.parentFile, target.name + ".sha256")
+    def temp = new File(target.parentFile, file.name + ".tmp")
+    temp.setText("$sha256  ${target.name}\n", "UTF-8")
+    Files.move(temp.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+}
 
 def downloader = new Downloader()
-for (platform in Platform.values()) {
-    for (bitSize in BitSize.values()) {
-        def distribution = new Distribution(version, platform, bitSize)
-        def archiveType = downloadConfig.getPackageResolver().getArchiveType(distribution)
-        def name = "${platform}-${version}-${bitSize}.${archiveType}"
-        def target = new File(root, name)
-        if (target.exists() && target.isFile()) {
-            println "Download $distribution: already exists"
-            continue
+def download = { Distribution distribution, String name, File target ->
+    def url = downloader.getDownloadUrl(downloadConfig, distribution)
+    //Target appears only after verification, so partial downloads live in separate file
+    def part = new File(target.parentFile, target.name + ".part")
+    def offset = part.isFile() && isHttp(url) ? part.length() : 0L
+    println "Download $distribution: start download from '$url' into '/mongo/$name'" + (offset > 0 ? " from offset $offset" : "")
+    def connection = open(url, offset)
+    try {
+        if (!(connection instanceof HttpURLConnection)) {
+            //No resume without ranges: partial file is written again
+            try {
+                connection.inputStream.withStream { input -> new FileOutputStream(part, false).withStream { output -> output << input } }
+            } catch (FileNotFoundException ignored) {
+                throw new IllegalArgumentException("not found at '$url'")
+            }
+        } else {
+            def code = connection.responseCode
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new IllegalArgumentException("not found at '$url'")
+            } else if (code == HttpURLConnection.HTTP_PARTIAL || code == HttpURLConnection.HTTP_OK) {
+                //Server may ignore range request and send whole file
+                def append = code == HttpURLConnection.HTTP_PARTIAL
+                connection.inputStream.withStream { input -> new FileOutputStream(part, append).withStream { output -> output << input } }
+            } else if (code != 416) {
+                //416: requested range not satisfiable - partial file is already complete
+                throw new IOException("unexpected response $code from '$url'")
+            }
         }
+    } finally {
+        close(connection)
+    }
+    def expected = checksum(url)
+    if (expected == null) {
+        println "Download $distribution: published checksum not found, skip verification"
+    } else {
+        def actual = digest(part, expected[0])
+        if (actual != expected[1]) {
+            part.delete()
+            throw new IOException("${expected[0]} mismatch: expected ${expected[1]}, actual $actual")
+        }
+    }
+    def sha256 = expected != null && expected[0] == "SHA-256" ? expected[1] : digest(part, "SHA-256")
+    Files.move(part.toPath(), target.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+    record(target, sha256)
+    println "Download $distribution: done"
+}
+
+def unpack = { File archive, ArchiveType type ->
+    def input = new BufferedInputStream(new FileInputStream(archive), 64 * 1024)
+    switch (type) {
+        case ArchiveType.TGZ: return new TarArchiveInputStream(new GzipCompressorInputStream(input))
+        case ArchiveType.TBZ2: return new TarArchiveInputStream(new BZip2CompressorInputStream(input))
+        case ArchiveType.ZIP: return new ZipArchiveInputStream(input)
+        default:
+            input.close()
+            throw new IOException("Unsupported archive type: $type")
+    }
+}
+
+//Every file of archive is stored once as "<Platform>-<BitSize>/<sha256>.gz", manifest lists them in archive order
+def deduplicate = { Distribution distribution, ArchiveType type, File archive, File manifest ->
+    def blobs = new File(root, "${distribution.platform}-${distribution.bitsize}")
+    blobs.mkdirs()
+    def lines = ["# ${archive.name}"]
+    long total = 0
+    long stored = 0
+    unpack(archive, type).withCloseable { ArchiveInputStream stream ->
+        def entry
+        while ((entry = stream.nextEntry) != null) {
+            if (entry.directory) {
+                continue
+            }
+            def mode = entry instanceof TarArchiveEntry ? entry.mode : (entry.unixMode ?: 0644)
+            //Blob is compressed into temp file while its hash is computed, then moved to its content address
+            def temp = File.createTempFile("blob", ".tmp", blobs)
+            def md = MessageDigest.getInstance("SHA-256")
+            long size = 0
+            new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024).withStream { output ->
+                def buffer = new byte[64 * 1024]
+                int length
+                while ((length = stream.read(buffer)) > 0) {
+                    md.update(buffer, 0, length)
+                    output.write(buffer, 0, length)
+                    size += length
+                }
+            }
+            def hash = md.digest().encodeHex().toString()
+            def blob = new File(blobs, "${hash}.gz")
+            total += size
+            if (blob.isFile()) {
+                temp.delete()
+            } else {
+                stored += size
+                //Concurrent writer of same blob writes same content
+                Files.move(temp.toPath(), blob.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+            }
+            lines << "$hash ${Integer.toOctalString(mode & 07777)} $size ${entry.name}"
+        }
+    }
+    def temp = new File(manifest.parentFile, manifest.name + ".tmp")
+    temp.setText(lines.join("\n") + "\n", "UTF-8")
+    Files.move(temp.toPath(), manifest.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+    println "Deduplicate $distribution: ${lines.size() - 1} files, $stored of $total bytes are new"
+}
+
+//Index lets runtime find distribution with its size and checksum without lookup of entries in bundle jar
+def index = { List<List> bundled ->
+    bundled.groupBy { "${it[0].platform}-${it[0].bitsize}" }.each { String directory, List<List> group ->
+        def file = new File(root, "$directory/index.properties")
+        def lines = new TreeMap<String, String>()
+        if (file.isFile()) {
+            //Distributions bundled by previous builds
+            def previous = new Properties()
+            file.withInputStream { previous.load(it) }
+            previous.each { String key, String value ->
+                if (new File(rootRaw, value.split(" ", 4)[3]).isFile()) {
+                    lines[key] = value
+                }
+            }
+        }
+        group.each { Distribution distribution, ArchiveType type, File resource ->
+            if (!resource.isFile()) {
+                return
+            }
+            def sha256 = new File(resource.parentFile, resource.name + ".sha256")
+            def hash = sha256.isFile() ? sha256.text.trim().split(/\s+/)[0] : digest(resource, "SHA-256")
+            def key = "${distribution.platform}-${distribution.version}-${distribution.bitsize}"
+            lines[key] = "$type ${resource.length()} $hash mongo/${resource.name}"
+        }
+        if (lines) {
+            file.parentFile.mkdirs()
+            def temp = new File(file.parentFile, file.name + ".tmp")
+            temp.setText("# <Platform>-<Version>-<BitSize>=<archive type> <size> <sha256> <resource>\n" + lines.collect { it.key + "=" + it.value }.join("\n") + "\n", "UTF-8")
+            Files.move(temp.toPath(), file.toPath(), ATOMIC_MOVE, REPLACE_EXISTING)
+            println "Index $directory: ${lines.size()} distributions"
+        }
+    }
+}
+
+root.mkdirs()
+work.mkdirs()
+def executor = Executors.newFixedThreadPool(threads)
+try {
+    def tasks = new LinkedHashMap<Distribution, Future<?>>()
+    def bundled = []
+    for (version in versions) {
+        for (platform in Platform.values()) {
+            for (bitSize in BitSize.values()) {
+                def distribution = new Distribution(version, platform, bitSize)
+                def archiveType = downloadConfig.getPackageResolver().getArchiveType(distribution)
+                def name = "${platform}-${version}-${bitSize}.${archiveType}"
+                def target = new File(work, name)
+                def manifest = new File(root, "${platform}-${version}-${bitSize}.manifest")
+                def sha256 = new File(work, name + ".sha256")
+                bundled << [distribution, archiveType, layout == "blobs" ? manifest : target]
+                if (layout == "blobs" ? manifest.isFile() : target.isFile() && sha256.isFile()) {
+                    println "Download $distribution: already exists"
+                    continue
+                }
+                tasks[distribution] = executor.submit({
+                    if (!target.isFile()) {
+                        download(distribution, name, target)
+                    } else if (!sha256.isFile()) {
+                        //Archive downloaded by previous build without checksum
+                        record(target, digest(target, "SHA-256"))
+                    }
+                    if (layout == "blobs") {
+                        deduplicate(distribution, archiveType, target, manifest)
+                    }
+                } as Runnable)
+            }
+        }
+    }
+    tasks.each { distribution, task ->
         try {
-            def url = downloader.getDownloadUrl(downloadConfig, distribution)
-            println "Download $distribution: start download from '$url' into '/mongo/$name'"
-            def file = downloader.download(downloadConfig, distribution)
-            FileUtils.moveFile(file, target)
-        } catch (IllegalArgumentException | IOException e) {
-            println "Download $distribution: ${e.getMessage()}"
+            task.get()
+        } catch (ExecutionException e) {
+            println "Download $distribution: ${e.cause.getMessage()}"
         }
     }
+    index(bundled)
+} finally {
+    executor.shutdownNow()
 }
@@ -0,0 +1,155 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.GenericVersion;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.extract.UUIDTempNaming;
+import de.flapdoodle.embed.process.io.directories.FixedPath;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleArtifactStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution distribution = new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64);
+
+    private ClassLoader contextClassLoader;
+    private URLClassLoader bundleClassLoader;
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private static byte[] tgz(String name, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (
+                TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes));
+        ) {
+            byte[] data = content.getBytes(UTF_8);
+            TarArchiveEntry entry = new TarArchiveEntry("mongodb-linux-x86_64/README");
+            entry.setSize(3);
+            tar.putArchiveEntry(entry);
+            tar.write("doc".getBytes(UTF_8));
+            tar.closeArchiveEntry();
+            entry = new TarArchiveEntry(name);
+            entry.setSize(data.length);
+            tar.putArchiveEntry(entry);
+            tar.write(data);
+            tar.closeArchiveEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Before
+    public void setUp() throws IOException {
+        File jar = folder.newFile("bundle.jar");
+        byte[] archive = tgz("mongodb-linux-x86_64/bin/mongod", "binary");
+        try (
+                OutputStream stream = new FileOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(stream);
+        ) {
+            ZipEntry entry = new ZipEntry(BundleExtractor.entryName(config, distribution));
+            CRC32 crc = new CRC32();
+            crc.update(archive);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(archive.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(archive);
+            zip.closeEntry();
+        }
+        //Bundle must be resolved only from classpath
+        MavenUtils.repository.set(emptyList());
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+        bundleClassLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        bundleClassLoader.close();
+        MavenUtils.repository.set(null);
+    }
+
+    private BundleArtifactStore store() throws IOException {
+        return new BundleArtifactStore(
+                config,
+                new FixedPath(folder.newFolder().getAbsolutePath()),
+                new UUIDTempNaming(),
+                new BundleExtractor(false, new BundleCache(folder.getRoot().toPath(), 0))
+        );
+    }
+
+    @Test
+    public void testCheckDistribution() throws IOException {
+        BundleArtifactStore store = store();
+        assertThat(store.checkDistribution(distribution)).isTrue();
+        //Build puts every platform of project version into classes directory, so missing distribution must have other version
+        assertThat(store.checkDistribution(new Distribution(new GenericVersion("0.0.0"), Platform.OS_X, BitSize.B64))).isFalse();
+    }
+
+    @Test
+    public void testExtractFileSet() throws IOException {
+        BundleArtifactStore store = store();
+        IExtractedFileSet files = store.extractFileSet(distribution);
+        assertThat(files.executable()).exists().hasContent("binary").canRead();
+        assertThat(files.executable().canExecute()).isTrue();
+        assertThat(files.files(FileType.Library)).isEmpty();
+        store.removeFileSet(distribution, files);
+        assertThat(files.executable()).doesNotExist();
+    }
+
+    @Test
+    public void testExtractFileSet_link() throws IOException {
+        File cache = folder.newFolder("cache");
+        BundleArtifactStore store = new BundleArtifactStore(
+                config,
+                new FixedPath(folder.newFolder().getAbsolutePath()),
+                new UUIDTempNaming(),
+                new BundleExtractor(false, new BundleCache(cache.toPath(), 1024 * 1024)),
+                true
+        );
+        IExtractedFileSet first = store.extractFileSet(distribution);
+        IExtractedFileSet second = store.extractFileSet(distribution);
+        assertThat(second.executable()).isNotEqualTo(first.executable()).hasContent("binary");
+        assertThat(second.executable().canExecute()).isTrue();
+        //Both are links to same cached file
+        assertThat(Files.isSameFile(first.executable().toPath(), second.executable().toPath())).isTrue();
+        store.removeFileSet(distribution, first);
+        assertThat(first.executable()).doesNotExist();
+        assertThat(second.executable()).exists().hasContent("binary");
+        store.removeFileSet(distribution, second);
+        //Staging directory is removed
+        assertThat(first.baseDir().list()).isEmpty();
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BundleCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BundleCache.Extractor write(AtomicInteger counter, int size) {
+        return target -> {
+            counter.incrementAndGet();
+            Files.write(target, new byte[size]);
+        };
+    }
+
+    @Test
+    public void testGet_missThenHit() throws IOException {
+        BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+        AtomicInteger counter = new AtomicInteger();
+        Path first = cache.get("key", "file.tgz", write(counter, 10));
+        Path second = cache.get("key", "file.tgz", write(counter, 10));
+        assertThat(counter).hasValue(1);
+        assertThat(second).isEqualTo(first).exists();
+        assertThat(Files.size(second)).isEqualTo(10);
+        assertThat(first.getParent()).isDirectory();
+        try (Stream<Path> files = Files.list(first.getParent())) {
+            assertThat(files).containsOnly(first);
+        }
+    }
+
+    @Test
+    public void testGet_failedExtraction() throws IOException {
+        BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+        assertThatThrownBy(() -> cache.get("key", "file.tgz", target -> {
+            throw new IOException("test");
+        })).isInstanceOf(IOException.class).hasMessage("test");
+        AtomicInteger counter = new AtomicInteger();
+        cache.get("key", "file.tgz", write(counter, 10));
+        assertThat(counter).hasValue(1);
+    }
+
+    @Test
+    public void testGetVerified() throws IOException {
+        BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+        AtomicInteger counter = new AtomicInteger();
+        BundleCache.VerifyingExtractor extractor = target -> {
+            write(counter, 10).extract(target);
+            return "abc";
+        };
+        Path file = cache.getVerified("key", "file.tgz", extractor);
+        assertThat(BundleCache.digest(file)).hasValue("abc");
+        assertThat(file.resolveSibling("file.tgz.sha256")).hasContent("abc  file.tgz");
+        assertThat(cache.getVerified("key", "file.tgz", extractor)).isEqualTo(file);
+        assertThat(counter).hasValue(1);
+        //Entry cached without verification is extracted again
+        assertThat(BundleCache.digest(cache.get("other", "file.tgz", write(counter, 10)))).isEmpty();
+        assertThat(cache.getVerified("other", "file.tgz", extractor)).exists();
+        assertThat(counter).hasValue(3);
+        assertThatThrownBy(() -> cache.getVerified("failed", "file.tgz", target -> {
+            throw new IOException("SHA-256 mismatch");
+        })).isInstanceOf(IOException.class);
+        assertThat(cache.getRoot().resolve("failed").toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void testKey() throws IOException {
+        Path jar = folder.newFile("bundle.jar").toPath();
+        String key = BundleCache.key(jar, "mongo/entry.tgz", "3.4.10");
+        assertThat(key).isEqualTo(BundleCache.key(jar, "mongo/entry.tgz", "3.4.10")).hasSize(40);
+        assertThat(key).isNotEqualTo(BundleCache.key(jar, "mongo/entry.zip", "3.4.10"));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() - 10_000));
+        assertThat(key).isNotEqualTo(BundleCache.key(jar, "mongo/entry.tgz", "3.4.10"));
+    }
+
+    @Test
+    public void testEvict_leastRecentlyUsed() throws IOException {
+        Path root = folder.newFolder().toPath();
+        BundleCache cache = new BundleCache(root, 250);
+        AtomicInteger counter = new AtomicInteger();
+        Path first = cache.get("first", "file.tgz", write(counter, 100));
+        Path second = cache.get("second", "file.tgz", write(counter, 100));
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(first.getParent(), FileTime.fromMillis(now - 20_000));
+        Files.setLastModifiedTime(second.getParent(), FileTime.fromMillis(now - 30_000));
+        //hit makes "first" most recently used
+        cache.get("first", "file.tgz", write(counter, 100));
+        Path third = cache.get("third", "file.tgz", write(counter, 100));
+        assertThat(counter).hasValue(3);
+        assertThat(first).exists();
+        assertThat(second.getParent()).doesNotExist();
+        assertThat(third).exists();
+        assertThat(root.resolve("first.lock")).exists();
+        assertThat(root.resolve("second.lock")).doesNotExist();
+    }
+
+    @Test
+    public void testEvict_skipLocked() throws Exception {
+        Path root = folder.newFolder().toPath();
+        BundleCache cache = new BundleCache(root, 150);
+        AtomicInteger counter = new AtomicInteger();
+        Path first = cache.get("first", "file.tgz", write(counter, 100));
+        Files.setLastModifiedTime(first.getParent(), FileTime.fromMillis(System.currentTimeMillis() - 20_000));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            //Hit in other thread or process holds shared lock of entry
+            Future<?> holder = executor.submit(() -> {
+                try (
+                        BundleCache.Lock lock = BundleCache.lock(root.resolve("first.lock"), true, true)
+                ) {
+                    assertThat(lock).isNotNull();
+                    locked.countDown();
+                    release.await();
+                }
+                return null;
+            });
+            locked.await();
+            Path second = cache.get("second", "file.tgz", write(counter, 100));
+            assertThat(first).exists();
+            assertThat(second).exists();
+            release.countDown();
+            holder.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        //Entry is evicted on next extraction
+        cache.get("third", "file.tgz", write(counter, 10));
+        assertThat(first.getParent()).doesNotExist();
+        assertThat(root.resolve("first.lock")).doesNotExist();
+    }
+
+    @Test
+    public void testUse_lockedDuringAction() throws Exception {
+        Path root = folder.newFolder().toPath();
+        BundleCache cache = new BundleCache(root, 150);
+        AtomicInteger counter = new AtomicInteger();
+        Path first = cache.get("first", "file.tgz", write(counter, 100));
+        Files.setLastModifiedTime(first.getParent(), FileTime.fromMillis(System.currentTimeMillis() - 20_000));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long size = cache.use("first", "file.tgz", write(counter, 100), file -> {
+                //Extraction in other thread or process evicts only unlocked entries
+                try {
+                    assertThat(executor.submit(() -> cache.get("second", "file.tgz", write(counter, 100))).get()).exists();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new IOException(e);
+                }
+                return Files.size(file);
+            });
+            assertThat(size).isEqualTo(100);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(counter).hasValue(2);
+        assertThat(first).exists();
+    }
+
+    @Test
+    public void testLock_deleted() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("entry.lock");
+        try (
+                BundleCache.Lock lock = BundleCache.lock(path, true)
+        ) {
+            lock.delete();
+        }
+        assertThat(path).doesNotExist();
+        try (
+                BundleCache.Lock lock = BundleCache.lock(path, false)
+        ) {
+            assertThat(lock).isNotNull();
+            assertThat(path).exists();
+        }
+        assertThat(BundleCache.localCount()).isZero();
+    }
+
+    /**
+     * Entry point of separate JVM for {@link #testGet_multiProcess()}: {@code <cache> <markers>}.
+     */
+    public static void main(String[] args) throws IOException {
+        Path markers = Paths.get(args[1]);
+        new BundleCache(Paths.get(args[0]), 1024).get("key", "file.tgz", target -> {
+            Files.createFile(markers.resolve(ManagementFactory.getRuntimeMXBean().getName()));
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Files.write(target, new byte[10]);
+        });
+    }
+
+    @Test
+    public void testGet_multiProcess() throws Exception {
+        Path root = folder.newFolder().toPath();
+        Path markers = folder.newFolder().toPath();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            processes.add(new ProcessBuilder(
+                    java, "-cp", System.getProperty("java.class.path"), BundleCacheTest.class.getName(),
+                    root.toString(), markers.toString()
+            ).inheritIO().start());
+        }
+        for (Process process : processes) {
+            assertThat(process.waitFor(1, TimeUnit.MINUTES)).isTrue();
+            assertThat(process.exitValue()).isEqualTo(0);
+        }
+        try (
+                Stream<Path> files = Files.list(markers)
+        ) {
+            assertThat(files).hasSize(1);
+        }
+        assertThat(root.resolve("key").resolve("file.tgz")).exists();
+    }
+
+    @Test
+    public void testGet_multiThread() throws Exception {
+        BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Path>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.get("key", "file.tgz", write(counter, 10))));
+            }
+            for (Future<Path> result : results) {
+                assertThat(result.get()).exists();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(counter).hasValue(1);
+        //Idle local locks are not kept
+        assertThat(BundleCache.localCount()).isZero();
+    }
+}
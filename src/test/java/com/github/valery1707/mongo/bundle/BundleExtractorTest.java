@@ -0,0 +1,248 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.GenericVersion;
+import de.flapdoodle.embed.process.distribution.Platform;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BundleExtractorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution distribution = new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64);
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final BundleListener recorder = new BundleListener() {
+        @Override
+        public void onCacheHit(String key) {
+            events.add("HIT");
+        }
+
+        @Override
+        public void onCacheMiss(String key) {
+            events.add("MISS");
+        }
+    };
+
+    private ClassLoader contextClassLoader;
+    private URLClassLoader bundleClassLoader;
+
+    @Before
+    public void setUp() throws IOException {
+        File jar = ZipUtilsTest.writeZip(
+                folder.newFile("bundle.jar"),
+                singletonMap(BundleExtractor.entryName(config, distribution), "archive"),
+                ZipEntry.STORED
+        );
+        //Bundle must be resolved only from classpath
+        MavenUtils.repository.set(emptyList());
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+        bundleClassLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        BundleMetrics.addListener(recorder);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        BundleMetrics.removeListener(recorder);
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        bundleClassLoader.close();
+        MavenUtils.repository.set(null);
+    }
+
+    @Test
+    public void testClassifier() {
+        assertThat(BundleExtractor.classifier(new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64))).isEqualTo("linux-64");
+        assertThat(BundleExtractor.classifier(new Distribution(Version.Main.PRODUCTION, Platform.Windows, BitSize.B32))).isEqualTo("windows-32");
+        assertThat(BundleExtractor.classifier(new Distribution(Version.Main.PRODUCTION, Platform.OS_X, BitSize.B64))).isEqualTo("osx-64");
+    }
+
+    @Test
+    public void testFindJar() throws IOException {
+        Path repo = folder.newFolder("repository").toPath();
+        MavenUtils.repository.set(singletonList(repo));
+        String version = BundleExtractor.version(distribution);
+        Path directory = Files.createDirectories(repo.resolve("com/github/valery1707/mongo-bundle").resolve(version + "-SNAPSHOT"));
+        long now = System.currentTimeMillis();
+        Path aggregate = Files.createFile(directory.resolve("mongo-bundle-" + version + "-SNAPSHOT.jar"));
+        Files.setLastModifiedTime(aggregate, FileTime.fromMillis(now - 60_000));
+        //Newest jar is built for other platform
+        Path osx = Files.createFile(directory.resolve("mongo-bundle-" + version + "-SNAPSHOT-osx-64.jar"));
+        Files.setLastModifiedTime(osx, FileTime.fromMillis(now));
+        BundleExtractor extractor = new BundleExtractor(true, new BundleCache(folder.newFolder().toPath(), 0));
+        assertThat(extractor.findJar(distribution)).isEqualTo(aggregate);
+        assertThat(extractor.findJar(new Distribution(distribution.getVersion(), Platform.OS_X, BitSize.B64))).isEqualTo(osx);
+        //Platform without published classifier jar is looked up only in jar with all platforms
+        Path osx32 = Files.createFile(directory.resolve("mongo-bundle-" + version + "-SNAPSHOT-osx-32.jar"));
+        Files.setLastModifiedTime(osx32, FileTime.fromMillis(now));
+        assertThat(extractor.findJar(new Distribution(distribution.getVersion(), Platform.OS_X, BitSize.B32))).isEqualTo(aggregate);
+        assertThat(BundleExtractor.CLASSIFIERS).contains(BundleExtractor.classifier(new Distribution(distribution.getVersion(), Platform.FreeBSD, BitSize.B64)));
+    }
+
+    @Test
+    public void testIsAvailable_maven() throws IOException {
+        Path repo = folder.newFolder("repository").toPath();
+        MavenUtils.repository.set(singletonList(repo));
+        Distribution maven = new Distribution(new GenericVersion("0.0.0"), Platform.Linux, BitSize.B64);
+        String version = BundleExtractor.version(maven);
+        Path directory = Files.createDirectories(repo.resolve("com/github/valery1707/mongo-bundle").resolve(version));
+        ZipUtilsTest.writeZip(
+                directory.resolve("mongo-bundle-" + version + ".jar").toFile(),
+                singletonMap(BundleExtractor.entryName(config, maven), "archive"),
+                ZipEntry.DEFLATED
+        );
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 0));
+        assertThat(extractor.isAvailable(config, maven)).isTrue();
+        assertThat(extractor.isAvailable(config, new Distribution(maven.getVersion(), Platform.Linux, BitSize.B32))).isFalse();
+    }
+
+    @Test
+    public void testPrewarm() throws Exception {
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder("cache").toPath(), 1024));
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+        extractor.prewarm(config, singletonList(distribution)).get(10, TimeUnit.SECONDS);
+        assertThat(events).containsExactly("MISS");
+        File file = extractor.download(config, distribution);
+        try {
+            assertThat(events).containsExactly("MISS", "HIT");
+            assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8)).isEqualTo("archive");
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testPrewarm_notFound() {
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.getRoot().toPath().resolve("cache"), 1024));
+        //Build puts every platform of project version into classes directory, so missing distribution must have other version
+        assertThatThrownBy(() -> extractor.prewarm(config, new GenericVersion("0.0.0")).get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(UncheckedIOException.class)
+                .hasStackTraceContaining("Mongo bundle jar not found");
+    }
+
+    @Test
+    public void testDownload_checksum() throws IOException {
+        String name = BundleExtractor.entryName(config, distribution);
+        String hash = Digests.hex(Digests.create(Digests.SHA_256).digest("archive".getBytes(UTF_8)));
+        for (String checksum : new String[]{hash, "0000"}) {
+            Map<String, String> content = new LinkedHashMap<>();
+            content.put(name, "archive");
+            content.put(name + ".sha256", Digests.checksumLine(checksum, "archive.tgz"));
+            File jar = ZipUtilsTest.writeZip(folder.newFile(), content, ZipEntry.DEFLATED);
+            try (
+                    URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)
+            ) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 1024));
+                if (checksum.equals(hash)) {
+                    Files.delete(extractor.download(config, distribution).toPath());
+                    Path cached = extractor.getCache().getRoot().resolve(extractor.cacheKey(config, distribution)).resolve(name.substring(name.lastIndexOf('/') + 1));
+                    assertThat(BundleCache.digest(cached)).hasValue(hash);
+                } else {
+                    assertThatThrownBy(() -> extractor.download(config, distribution))
+                            .isInstanceOf(IOException.class)
+                            .hasMessageContaining("SHA-256 mismatch");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTarget() throws IOException {
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+        Path target = folder.newFolder("target").toPath();
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 0), target.toString());
+        File file = extractor.download(config, distribution);
+        try {
+            assertThat(file.toPath().getParent()).isEqualTo(target);
+            assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8)).isEqualTo("archive");
+        } finally {
+            Files.delete(file.toPath());
+        }
+        //Missing target falls back to temp directory
+        extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 0), target.resolve("missing").toString());
+        file = extractor.download(config, distribution);
+        try {
+            assertThat(file.toPath().getParent()).isNotEqualTo(target.resolve("missing"));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testTarget_memory() throws IOException {
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 0), BundleExtractor.TARGET_MEMORY);
+        try (
+                InputStream input = extractor.open(config, distribution)
+        ) {
+            assertThat(input.available()).isEqualTo(7);
+            assertThat(IOUtils.toString(input, UTF_8)).isEqualTo("archive");
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        String name = BundleExtractor.entryName(config, distribution);
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put(name, "archive");
+        content.put(BundleIndex.indexName(distribution), BundleIndex.key(distribution) + "=TGZ 7 0000 " + name + "\n");
+        File jar = ZipUtilsTest.writeZip(folder.newFile(), content, ZipEntry.STORED);
+        try (
+                URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)
+        ) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder().toPath(), 1024));
+            assertThat(BundleIndex.find(distribution)).hasValueSatisfying(index -> assertThat(index.get(distribution)).hasValueSatisfying(entry -> {
+                assertThat(entry.getType()).isEqualTo(ArchiveType.TGZ);
+                assertThat(entry.getSize()).isEqualTo(7);
+                assertThat(entry.getResource()).isEqualTo(name);
+                assertThat(entry.isManifest()).isFalse();
+            }));
+            assertThat(extractor.isAvailable(config, distribution)).isTrue();
+            assertThat(extractor.isAvailable(config, new Distribution(new GenericVersion("0.0.0"), Platform.Linux, BitSize.B32))).isFalse();
+            //Checksum is taken from index
+            assertThatThrownBy(() -> extractor.download(config, distribution))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("SHA-256 mismatch")
+                    .hasMessageContaining("expected 0000");
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.ArchiveType;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.extract.UUIDTempNaming;
+import de.flapdoodle.embed.process.io.directories.FixedPath;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BundleManifestTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution v34 = new Distribution(Version.V3_4_3, Platform.Linux, BitSize.B64);
+    private final Distribution v36 = new Distribution(Version.V3_6_2, Platform.Linux, BitSize.B64);
+
+    private ClassLoader contextClassLoader;
+    private URLClassLoader bundleClassLoader;
+
+    private static String sha256(byte[] content) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    /**
+     * Bundle with two versions sharing license file.
+     */
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Before
+    public void setUp() throws Exception {
+        Map<String, Map<String, String>> versions = new LinkedHashMap<>();
+        for (Distribution distribution : new Distribution[]{v34, v36}) {
+            Map<String, String> files = new LinkedHashMap<>();
+            files.put("mongodb/GNU-AGPL-3.0", "license");
+            files.put("mongodb/bin/mongod", "mongod " + distribution.getVersion().asInDownloadPath());
+            versions.put(BundleManifest.manifestName(distribution), files);
+        }
+        File jar = folder.newFile("bundle.jar");
+        Map<String, byte[]> blobs = new LinkedHashMap<>();
+        try (
+                OutputStream stream = new FileOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(stream);
+        ) {
+            for (Map.Entry<String, Map<String, String>> version : versions.entrySet()) {
+                StringBuilder manifest = new StringBuilder("# test\n");
+                for (Map.Entry<String, String> file : version.getValue().entrySet()) {
+                    byte[] content = file.getValue().getBytes(UTF_8);
+                    String hash = sha256(content);
+                    ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+                    try (
+                            GZIPOutputStream output = new GZIPOutputStream(gzip);
+                    ) {
+                        output.write(content);
+                    }
+                    blobs.put("mongo/Linux-B64/" + hash + ".gz", gzip.toByteArray());
+                    manifest
+                            .append(hash).append(' ')
+                            .append(file.getKey().endsWith("mongod") ? "755" : "644").append(' ')
+                            .append(content.length).append(' ')
+                            .append(file.getKey()).append('\n');
+                }
+                put(zip, version.getKey(), manifest.toString().getBytes(UTF_8));
+            }
+            for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+                put(zip, blob.getKey(), blob.getValue());
+            }
+        }
+        assertThat(blobs).hasSize(3);
+        //Bundle must be resolved only from classpath
+        MavenUtils.repository.set(emptyList());
+        contextClassLoader = Thread.currentThread().getContextClassLoader();
+        bundleClassLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        Thread.currentThread().setContextClassLoader(bundleClassLoader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+        bundleClassLoader.close();
+        MavenUtils.repository.set(null);
+    }
+
+    @Test
+    public void testFind() throws IOException {
+        assertThat(BundleManifest.find(v34)).hasValueSatisfying(manifest -> {
+            assertThat(manifest.getEntries()).extracting(BundleManifest.Entry::getName).containsExactly("mongodb/GNU-AGPL-3.0", "mongodb/bin/mongod");
+            assertThat(manifest.getEntries()).extracting(BundleManifest.Entry::getMode).containsExactly(0644, 0755);
+            assertThat(manifest.getEntries()).extracting(BundleManifest.Entry::getSize).containsExactly(7L, 12L);
+        });
+        assertThat(BundleManifest.find(new Distribution(Version.V3_4_3, Platform.OS_X, BitSize.B64))).isEmpty();
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Test
+    public void testDownload() throws IOException {
+        BundleExtractor extractor = new BundleExtractor(false, new BundleCache(folder.newFolder("cache").toPath(), 1024 * 1024));
+        File archive = extractor.download(config, v36);
+        try (
+                InputStream input = Files.newInputStream(archive.toPath());
+                ArchiveInputStream tar = BundleArtifactStore.archive(ArchiveType.TGZ, input);
+        ) {
+            ArchiveEntry entry = tar.getNextEntry();
+            assertThat(entry.getName()).isEqualTo("mongodb/GNU-AGPL-3.0");
+            assertThat(IOUtils.toString(tar, UTF_8)).isEqualTo("license");
+            entry = tar.getNextEntry();
+            assertThat(entry.getName()).isEqualTo("mongodb/bin/mongod");
+            assertThat(((TarArchiveEntry) entry).getMode() & 0777).isEqualTo(0755);
+            assertThat(IOUtils.toString(tar, UTF_8)).isEqualTo("mongod 3.6.2");
+            assertThat(tar.getNextEntry()).isNull();
+        } finally {
+            Files.delete(archive.toPath());
+        }
+    }
+
+    @Test
+    public void testArtifactStore() throws IOException {
+        BundleArtifactStore store = new BundleArtifactStore(
+                config,
+                new FixedPath(folder.newFolder().getAbsolutePath()),
+                new UUIDTempNaming(),
+                new BundleExtractor(false, new BundleCache(folder.getRoot().toPath(), 0))
+        );
+        assertThat(store.checkDistribution(v34)).isTrue();
+        assertThat(store.checkDistribution(new Distribution(Version.V3_4_3, Platform.OS_X, BitSize.B64))).isFalse();
+        IExtractedFileSet files = store.extractFileSet(v34);
+        assertThat(files.executable()).exists().hasContent("mongod 3.4.3");
+        assertThat(files.executable().canExecute()).isTrue();
+        store.removeFileSet(v34, files);
+        assertThat(files.executable()).doesNotExist();
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Test
+    public void testOpen_corrupted() throws Exception {
+        File root = folder.newFolder("corrupted");
+        String hash = sha256("license".getBytes(UTF_8));
+        File blob = new File(new File(root, "Linux-B64"), hash + ".gz");
+        assertThat(blob.getParentFile().mkdirs()).isTrue();
+        try (
+                OutputStream output = new GZIPOutputStream(new FileOutputStream(blob));
+        ) {
+            output.write("License".getBytes(UTF_8));
+        }
+        BundleManifest manifest = new BundleManifest(new File(root, "test.manifest").toURI().toURL(), "Linux-B64", Arrays.asList(
+                new BundleManifest.Entry(hash, 0644, 7, "mongodb/GNU-AGPL-3.0"),
+                new BundleManifest.Entry(hash, 0644, 8, "mongodb/README")
+        ));
+        for (BundleManifest.Entry entry : manifest.getEntries()) {
+            try (
+                    InputStream input = manifest.open(entry);
+            ) {
+                assertThatThrownBy(() -> IOUtils.toByteArray(input))
+                        .isInstanceOf(IOException.class)
+                        .hasMessageContaining(entry.getSize() == 7 ? "SHA-256 mismatch" : "Size mismatch");
+            }
+        }
+        assertThatThrownBy(() -> manifest.writeArchive(ArchiveType.TGZ, folder.newFile().toPath()))
+                .isInstanceOf(IOException.class);
+    }
+}
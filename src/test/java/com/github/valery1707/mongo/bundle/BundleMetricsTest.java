@@ -0,0 +1,184 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BundleMetricsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private final BundleListener recorder = new BundleListener() {
+        @Override
+        public void onPhase(Phase phase, String subject, long nanos) {
+            events.add(phase + " " + subject);
+        }
+
+        @Override
+        public void onBytes(String subject, long read, long written) {
+            events.add("BYTES " + read + " " + written);
+        }
+
+        @Override
+        public void onSkipped(String subject, long entries) {
+            events.add("SKIPPED " + entries);
+        }
+
+        @Override
+        public void onCacheHit(String key) {
+            events.add("HIT " + key);
+        }
+
+        @Override
+        public void onCacheMiss(String key) {
+            events.add("MISS " + key);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        BundleMetrics.addListener(recorder);
+    }
+
+    @After
+    public void tearDown() {
+        BundleMetrics.removeListener(recorder);
+    }
+
+    private File writeZip(int method) throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("first.txt", "first");
+        content.put("second.txt", "second");
+        content.put("third.txt", "third");
+        return ZipUtilsTest.writeZip(folder.newFile("temp.zip"), content, method);
+    }
+
+    @Test
+    public void testInitErrors() {
+        //Listeners are not requested by system property in tests
+        assertThat(BundleMetrics.getInitErrors()).isEmpty();
+    }
+
+    @Test
+    public void testZip_stored() throws IOException {
+        Path zip = writeZip(ZipEntry.STORED).toPath();
+        ZipUtils.extract(zip, singletonMap("second.txt", folder.getRoot().toPath().resolve("second.txt")));
+        assertThat(events).containsExactly(
+                "SCAN " + zip,
+                "COPY " + zip,
+                "BYTES 6 6",
+                "SKIPPED 2"
+        );
+    }
+
+    @Test
+    public void testZip_stream() throws IOException {
+        Path zip = writeZip(ZipEntry.DEFLATED).toPath();
+        Path target = folder.getRoot().toPath().resolve("third.txt");
+        ZipUtils.extract(zip, entry -> entry.filter(e -> e.getName().equals("third.txt")).map(e -> target));
+        assertThat(events).hasSize(4);
+        assertThat(events.subList(0, 2)).containsExactly("SCAN " + zip, "COPY " + zip);
+        assertThat(events.get(2)).startsWith("BYTES ").endsWith(" 5");
+        assertThat(events.get(3)).isEqualTo("SKIPPED 2");
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+        cache.get("key", "file.tgz", target -> Files.write(target, "content".getBytes(UTF_8)));
+        cache.get("key", "file.tgz", target -> Files.write(target, "content".getBytes(UTF_8)));
+        assertThat(events).containsExactly(
+                "LOCK_WAIT key",
+                "MISS key",
+                "HIT key"
+        );
+    }
+
+    @Test
+    public void testBrokenListener() throws IOException {
+        BundleListener broken = new BundleListener() {
+            @Override
+            public void onCacheMiss(String key) {
+                throw new IllegalStateException("broken");
+            }
+        };
+        BundleMetrics.addListener(broken);
+        try {
+            BundleCache cache = new BundleCache(folder.newFolder().toPath(), 1024);
+            assertThat(cache.get("key", "file.tgz", target -> Files.write(target, new byte[1]))).exists();
+            assertThat(events).contains("MISS key");
+        } finally {
+            BundleMetrics.removeListener(broken);
+        }
+    }
+
+    @Test
+    public void testLogging() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        LoggingBundleListener listener = new LoggingBundleListener(new PrintStream(buffer, true));
+        listener.onPhase(BundleListener.Phase.COPY, "bundle.jar", 1_500_000);
+        listener.onBytes("bundle.jar", 10, 20);
+        listener.onSkipped("bundle.jar", 3);
+        listener.onCacheHit("key");
+        listener.onCacheMiss("key");
+        assertThat(new String(buffer.toByteArray(), UTF_8).split("\\R")).containsExactly(
+                "[mongo-bundle] COPY bundle.jar: 1.500 ms",
+                "[mongo-bundle] BYTES bundle.jar: read 10, written 20",
+                "[mongo-bundle] SKIPPED bundle.jar: 3 entries",
+                "[mongo-bundle] CACHE_HIT key",
+                "[mongo-bundle] CACHE_MISS key"
+        );
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        JmxBundleListener listener = JmxBundleListener.register();
+        ObjectName name = new ObjectName(JmxBundleListener.OBJECT_NAME);
+        try {
+            listener.onPhase(BundleListener.Phase.LOCK_WAIT, "key", 100);
+            listener.onPhase(BundleListener.Phase.LOCK_WAIT, "key", 50);
+            listener.onBytes("bundle.jar", 10, 20);
+            listener.onSkipped("bundle.jar", 3);
+            listener.onCacheHit("key");
+            listener.onCacheMiss("key");
+            listener.onCacheMiss("key");
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "CacheMisses")).isEqualTo(2L);
+            assertThat(listener.getCacheHits()).isEqualTo(1);
+            assertThat(listener.getBytesRead()).isEqualTo(10);
+            assertThat(listener.getBytesWritten()).isEqualTo(20);
+            assertThat(listener.getEntriesSkipped()).isEqualTo(3);
+            assertThat(listener.getLockWaitNanos()).isEqualTo(150);
+            assertThat(listener.getPhaseCounts()).containsEntry("LOCK_WAIT", 2L).containsEntry("COPY", 0L);
+            listener.reset();
+            assertThat(listener.getPhaseNanos()).containsEntry("LOCK_WAIT", 0L);
+            //Second registration replaces first one
+            JmxBundleListener second = JmxBundleListener.register();
+            second.onCacheHit("key");
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "CacheHits")).isEqualTo(1L);
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClasspathUtilsTest {
+    private static final String NAME = "mongo/Linux-V3_4_10-B64.tgz";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    private File writeJar() throws IOException {
+        File file = folder.newFile("bundle with space.jar");
+        try (
+                OutputStream stream = new FileOutputStream(file);
+                ZipOutputStream zip = new ZipOutputStream(stream);
+        ) {
+            zip.putNextEntry(new ZipEntry(NAME));
+            IOUtils.write("archive", zip, UTF_8);
+            zip.closeEntry();
+        }
+        return file;
+    }
+
+    @Test
+    public void testFindResource_notFound() throws IOException {
+        try (
+                URLClassLoader loader = new URLClassLoader(new URL[0], null)
+        ) {
+            assertThat(ClasspathUtils.findResource(NAME, null, loader)).isEmpty();
+        }
+    }
+
+    @Test
+    public void testFindResource_jar() throws IOException {
+        File jar = writeJar();
+        try (
+                URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)
+        ) {
+            Optional<URL> resource = ClasspathUtils.findResource(NAME, null, loader);
+            assertThat(resource).isNotEmpty();
+            assertThat(ClasspathUtils.jarOf(resource.get())).contains(jar.toPath());
+            assertThat(ClasspathUtils.fileOf(resource.get())).isEmpty();
+        }
+    }
+
+    @Test
+    public void testFindResource_directory() throws IOException {
+        Path root = folder.newFolder().toPath();
+        Path file = Files.createDirectories(root.resolve("mongo")).resolve("Linux-V3_4_10-B64.tgz");
+        Files.write(file, "archive".getBytes(UTF_8));
+        try (
+                URLClassLoader loader = new URLClassLoader(new URL[]{root.toUri().toURL()}, null)
+        ) {
+            Optional<URL> resource = ClasspathUtils.findResource(NAME, null, loader);
+            assertThat(resource).isNotEmpty();
+            assertThat(ClasspathUtils.jarOf(resource.get())).isEmpty();
+            assertThat(ClasspathUtils.fileOf(resource.get())).contains(file);
+        }
+    }
+
+    @Test
+    public void testJarOf_nested() throws IOException {
+        URL nested = new URL("jar:file:/opt/app.jar!/BOOT-INF/lib/mongo-bundle.jar!/" + NAME);
+        assertThat(ClasspathUtils.jarOf(nested)).isEmpty();
+        assertThat(ClasspathUtils.fileOf(nested)).isEmpty();
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.valery1707.mongo.bundle;
+
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.store.IDownloader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompositeDownloaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution distribution = new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64);
+
+    private final List<String> winners = Collections.synchronizedList(new ArrayList<>());
+    private final BundleListener recorder = new BundleListener() {
+        @Override
+        public void onSource(String subject, String source, long nanos) {
+            winners.add(source);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        BundleMetrics.addListener(recorder);
+    }
+
+    @After
+    public void tearDown() {
+        BundleMetrics.removeListener(recorder);
+    }
+
+    /**
+     * Source which delivers file with given content after delay.
+     */
+    private IDownloader delivering(String content, long delayMillis) {
+        return new IDownloader() {
+            @Override
+            public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+                return null;
+            }
+
+            @Override
+            public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted", e);
+                }
+                File file = folder.newFile();
+                Files.write(file.toPath(), content.getBytes(UTF_8));
+                return file;
+            }
+        };
+    }
+
+    private static IDownloader failing() {
+        return new IDownloader() {
+            @Override
+            public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+                return null;
+            }
+
+            @Override
+            public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+                throw new NoSuchFileException("missing");
+            }
+        };
+    }
+
+    @Test
+    public void testDownload_fallback() throws IOException {
+        CompositeDownloader downloader = new CompositeDownloader(Arrays.asList(
+                new CompositeDownloader.Source("bundle", failing(), 1000),
+                new CompositeDownloader.Source("mirror", delivering("mirror", 0), 1000)
+        ), -1);
+        File file = downloader.download(config, distribution);
+        assertThat(file).hasContent("mirror");
+        assertThat(downloader.getSource(distribution)).hasValue("mirror");
+        assertThat(winners).containsExactly("mirror");
+    }
+
+    @Test
+    public void testDownload_timeout() throws IOException {
+        CompositeDownloader downloader = new CompositeDownloader(Arrays.asList(
+                new CompositeDownloader.Source("slow", delivering("slow", 10_000), 100),
+                new CompositeDownloader.Source("network", delivering("network", 0), 0)
+        ), -1);
+        long start = System.nanoTime();
+        assertThat(downloader.download(config, distribution)).hasContent("network");
+        assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+        assertThat(downloader.getSource(distribution)).hasValue("network");
+    }
+
+    @Test
+    public void testDownload_hedge() throws Exception {
+        CountDownLatch won = new CountDownLatch(1);
+        CompletableFuture<File> late = new CompletableFuture<>();
+        IDownloader slow = new IDownloader() {
+            @Override
+            public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+                return null;
+            }
+
+            @Override
+            public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+                //Delivers file only after other source won, even when it is cancelled
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        won.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                File file = delivering("slow", 0).download(config, distribution);
+                late.complete(file);
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return file;
+            }
+        };
+        BundleListener winner = new BundleListener() {
+            @Override
+            public void onSource(String subject, String source, long nanos) {
+                won.countDown();
+            }
+        };
+        BundleMetrics.addListener(winner);
+        try {
+            CompositeDownloader downloader = new CompositeDownloader(Arrays.asList(
+                    new CompositeDownloader.Source("slow", slow, 0),
+                    new CompositeDownloader.Source("fast", delivering("fast", 0), 0)
+            ), 10);
+            assertThat(downloader.download(config, distribution)).hasContent("fast");
+            assertThat(downloader.getSource(distribution)).hasValue("fast");
+        } finally {
+            BundleMetrics.removeListener(winner);
+        }
+        //File of late source is deleted right after it is delivered
+        File file = late.get(10, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (file.exists() && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertThat(file).doesNotExist();
+        assertThat(folder.getRoot().list()).hasSize(1);
+    }
+
+    @Test
+    public void testDownload_failed() {
+        CompositeDownloader downloader = new CompositeDownloader(Arrays.asList(
+                new CompositeDownloader.Source("bundle", failing(), 0),
+                new CompositeDownloader.Source("slow", delivering("slow", 10_000), 50)
+        ), -1);
+        assertThatThrownBy(() -> downloader.download(config, distribution))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("is not available in sources bundle, slow")
+                .satisfies(e -> assertThat(e.getSuppressed()).hasSize(2));
+        assertThat(downloader.getSource(distribution)).isEmpty();
+    }
+
+    @Test
+    public void testMirror() throws IOException {
+        String path = config.getPackageResolver().getPath(distribution);
+        //Directory mirror
+        Path directory = folder.newFolder("mirror").toPath();
+        Files.createDirectories(directory.resolve(path).getParent());
+        Files.write(directory.resolve(path), "archive".getBytes(UTF_8));
+        File file = new MirrorDownloader(directory.toString()).download(config, distribution);
+        try {
+            assertThat(file).hasContent("archive");
+        } finally {
+            Files.delete(file.toPath());
+        }
+        assertThatThrownBy(() -> new MirrorDownloader(folder.newFolder().toString()).download(config, distribution))
+                .isInstanceOf(NoSuchFileException.class);
+        //URL mirror
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/mongo/", exchange -> {
+            byte[] content = exchange.getRequestURI().getPath().equals("/mongo/" + path) ? "remote".getBytes(UTF_8) : null;
+            exchange.sendResponseHeaders(content != null ? 200 : 404, content != null ? content.length : -1);
+            try (
+                    OutputStream output = exchange.getResponseBody()
+            ) {
+                if (content != null) {
+                    output.write(content);
+                }
+            }
+        });
+        server.start();
+        try {
+            String mirror = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/mongo";
+            MirrorDownloader downloader = new MirrorDownloader(mirror);
+            assertThat(downloader.getDownloadUrl(config, distribution)).isEqualTo(mirror + "/" + path);
+            file = downloader.download(config, distribution);
+            try {
+                assertThat(file).hasContent("remote");
+            } finally {
+                Files.delete(file.toPath());
+            }
+            assertThatThrownBy(() -> new MirrorDownloader(mirror + "/missing").download(config, distribution))
+                    .isInstanceOf(IOException.class);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
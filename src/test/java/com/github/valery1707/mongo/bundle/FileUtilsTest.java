@@ -4,14 +4,18 @@ import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.attribute.PosixFilePermissions.asFileAttribute;
 import static java.util.Collections.singleton;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class FileUtilsTest {
     @Test
@@ -172,6 +176,27 @@ public class FileUtilsTest {
         }
     }
 
+    @Test
+    public void testScan() throws IOException {
+        try (
+                FileSystem fileSystem = MemoryFileSystemBuilder.newLinux().build()
+        ) {
+            Path root = Files.createDirectories(fileSystem.getPath("tmp", "root"));
+            Files.createDirectory(root.resolve("lib-1.0-SNAPSHOT"));
+            Files.write(root.resolve("lib-1.0-1.jar"), new byte[3]);
+            Files.createFile(root.resolve("lib-1.0-1.pom"));
+            Files.createFile(root.resolve("lib-1[0]-1.jar"));
+            List<FileUtils.Scanned> scanned = FileUtils.scan(root, FileUtils.escapeGlob("lib-1.0-") + "*");
+            assertThat(scanned).extracting(file -> file.getPath().getFileName().toString())
+                    .containsOnly("lib-1.0-SNAPSHOT", "lib-1.0-1.jar", "lib-1.0-1.pom");
+            assertThat(scanned).filteredOn(FileUtils.Scanned::isDirectory).hasSize(1);
+            assertThat(FileUtils.scan(root, "*" + FileUtils.escapeGlob("[0]-1.jar"))).hasSize(1);
+            assertThat(FileUtils.scan(root, "*.jar")).filteredOn(FileUtils.Scanned::isFile).extracting(FileUtils.Scanned::getSize).contains(3L);
+            assertThat(FileUtils.scan(root.resolve("unknown"), "*")).isEmpty();
+            assertThat(FileUtils.scan(root.resolve("lib-1.0-1.jar"), "*")).isEmpty();
+        }
+    }
+
     @Test
     public void testLastModifiedTime_notExist() throws IOException {
         try (
@@ -195,4 +220,34 @@ public class FileUtilsTest {
             assertThat(FileUtils.getLastModifiedTime(root)).isNotNull();
         }
     }
+
+    @Test
+    public void testLinkOrCopy_link() throws IOException {
+        Path root = Files.createTempDirectory("link");
+        try {
+            Path source = Files.write(root.resolve("source"), "content".getBytes(UTF_8));
+            Path target = root.resolve("target");
+            assertThat(FileUtils.linkOrCopy(source, target)).isTrue();
+            assertThat(Files.isSameFile(source, target)).isTrue();
+            assertThatThrownBy(() -> FileUtils.linkOrCopy(source, target)).isInstanceOf(FileAlreadyExistsException.class);
+        } finally {
+            FileUtils.deleteRecursively(root);
+        }
+    }
+
+    @Test
+    public void testLinkOrCopy_copy() throws IOException {
+        Path root = Files.createTempDirectory("link");
+        try (
+                FileSystem fileSystem = MemoryFileSystemBuilder.newLinux().build()
+        ) {
+            //Link between file systems is impossible
+            Path source = Files.write(fileSystem.getPath("source"), "content".getBytes(UTF_8));
+            Path target = root.resolve("target");
+            assertThat(FileUtils.linkOrCopy(source, target)).isFalse();
+            assertThat(new String(Files.readAllBytes(target), UTF_8)).isEqualTo("content");
+        } finally {
+            FileUtils.deleteRecursively(root);
+        }
+    }
 }
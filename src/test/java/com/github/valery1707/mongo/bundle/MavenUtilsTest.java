@@ -6,14 +6,17 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -38,6 +41,7 @@ public class MavenUtilsTest {
     @Before
     public void setUp() throws IOException {
         MavenUtils.repository.set(null);
+        MavenUtils.resolved.clear();
         FS = MemoryFileSystemBuilder.newLinux().build();
 
         maven = Files.createDirectories(FS.getPath("/opt/.m2"));
@@ -108,6 +112,61 @@ public class MavenUtilsTest {
         }
     }
 
+    @Test
+    public void testRepositoryRoots_multiple() throws IOException {
+        String oldHome = System.getProperty("user.home");
+        try {
+            System.setProperty("user.home", user.toString());
+            System.setProperty("maven.repo.local", "/path/to/property/repo");
+            env.put("GRADLE_USER_HOME", "/opt/gradle");
+            copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+            copy(
+                    () -> new ByteArrayInputStream("<settings><localRepository>${user.home}/custom</localRepository></settings>".getBytes(StandardCharsets.UTF_8)),
+                    user.resolve(".m2").resolve("settings.xml")
+            );
+            Path property = Files.createDirectories(FS.getPath("/path/to/property/repo"));
+            Path custom = Files.createDirectories(user.resolve("custom"));
+            Path local = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+            Path repo = Files.createDirectories(user.resolve(".m2").resolve("repository"));
+            Path gradle = Files.createDirectories(FS.getPath("/opt/gradle/caches/modules-2/files-2.1"));
+            assertThat(MavenUtils.repositoryRoots()).containsExactly(property, custom, local, repo, gradle);
+        } finally {
+            System.setProperty("user.home", oldHome);
+            System.clearProperty("maven.repo.local");
+        }
+    }
+
+    private static Path createGradleLibrary(Path cache, String version, String checksum, String suffix, LocalDateTime downloadAt) throws IOException {
+        Path path = cache
+                .resolve(GROUP)
+                .resolve(ARTIFACT)
+                .resolve(version)
+                .resolve(checksum)
+                .resolve(ARTIFACT + "-" + version + suffix);
+        Files.createDirectories(path.getParent());
+        path = Files.createFile(path);
+        Files.setLastModifiedTime(path, FileTime.from(downloadAt.toInstant(ZoneOffset.UTC)));
+        return path;
+    }
+
+    @Test
+    public void testFindLibrary_gradle() throws IOException {
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        Path cache = Files.createDirectories(FS.getPath("/opt/gradle/caches/modules-2/files-2.1"));
+        MavenUtils.repository.set(Arrays.asList(repo, cache));
+        createGradleLibrary(cache, "1.0.0", "5d41402abc4b2a76b9719d911017c592", ".pom", LocalDateTime.now());
+        Path release = createGradleLibrary(cache, "1.0.0", "7d793037a0760186574b0282f2f435e7", ".jar", LocalDateTime.now());
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", false)).isNotEmpty().contains(release);
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.1", ".jar", false)).isEmpty();
+
+        //Latest snapshot of all roots wins
+        createLibrary(repo, GROUP, ARTIFACT, "1.0.0-094e518ac4-1", ".jar", LocalDateTime.now().minusDays(1));
+        Path snapshot = createGradleLibrary(cache, "1.0.0-SNAPSHOT", "9e107d9d372bb6826bd81d3542a419d6", ".jar", LocalDateTime.now());
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(snapshot);
+        Path newer = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-094e518ac4-2", ".jar", LocalDateTime.now().plusDays(1));
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(newer);
+    }
+
     @SuppressWarnings("SameParameterValue")
     private static Path createLibrary(Path repo, String group, String artifact, String version, String suffix, LocalDateTime downloadAt) throws IOException {
         Path path = Stream
@@ -146,4 +205,84 @@ public class MavenUtilsTest {
         createLibrary(repo, GROUP, ARTIFACT, "1.0.0-SNAPSHOT", ".pom", LocalDateTime.now());
         assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(jar);
     }
+
+    @Test
+    public void testFindLibrary_cache_miss() throws IOException {
+        copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", false)).isEmpty();
+        Path jar = createLibrary(repo, GROUP, ARTIFACT, "1.0.0", ".jar", LocalDateTime.now());
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", false)).isNotEmpty().contains(jar);
+    }
+
+    @Test
+    public void testFindLibrary_cache_missInVersionDirectory() throws IOException {
+        copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        Path pom = createLibrary(repo, GROUP, ARTIFACT, "1.0.0", ".pom", LocalDateTime.now().minusDays(1));
+        Path versionDir = pom.getParent();
+        Path artifactDir = versionDir.getParent();
+        FileTime artifactTime = Files.getLastModifiedTime(artifactDir);
+        FileTime versionTime = Files.getLastModifiedTime(versionDir);
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", false)).isEmpty();
+
+        //Library is added into existing version directory: only version directory is changed
+        Path jar = createLibrary(repo, GROUP, ARTIFACT, "1.0.0", ".jar", LocalDateTime.now());
+        Files.setLastModifiedTime(artifactDir, artifactTime);
+        Files.setLastModifiedTime(versionDir, FileTime.fromMillis(versionTime.toMillis() + 1000));
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", false)).isNotEmpty().contains(jar);
+    }
+
+    @Test
+    public void testFindLibrary_cache_invalidation() throws IOException {
+        copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        Path jar = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-094e518ac4-1", ".jar", LocalDateTime.now().minusDays(1));
+        Path artifactDir = jar.getParent().getParent();
+        FileTime artifactTime = Files.getLastModifiedTime(artifactDir);
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(jar);
+
+        //Directories are not changed: cached result is used
+        Path newer = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-SNAPSHOT", ".jar", LocalDateTime.now());
+        Files.setLastModifiedTime(artifactDir, artifactTime);
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(jar);
+
+        //Artifact directory is changed: library is resolved again
+        Files.setLastModifiedTime(artifactDir, FileTime.fromMillis(artifactTime.toMillis() + 1000));
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(newer);
+    }
+
+    private static void writeMetadata(Path library, String lastUpdated, String snapshot) throws IOException {
+        String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<metadata modelVersion=\"1.1.0\">\n"
+                + "  <versioning>\n"
+                + snapshot
+                + "    <lastUpdated>" + lastUpdated + "</lastUpdated>\n"
+                + "  </versioning>\n"
+                + "</metadata>\n";
+        Files.write(library.getParent().resolve("maven-metadata-local.xml"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFindLibrary_snapshot_metadata() throws IOException {
+        copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        //Modification times are reset, but metadata keeps real order
+        Path jar = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-SNAPSHOT", ".jar", LocalDateTime.now().minusDays(1));
+        writeMetadata(jar, "20180301120000", "    <snapshot><localCopy>true</localCopy></snapshot>\n");
+        Path old = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-094e518ac4-1", ".jar", LocalDateTime.now());
+        writeMetadata(old, "20180201120000", "");
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(jar);
+    }
+
+    @Test
+    public void testFindLibrary_snapshot_metadataRemote() throws IOException {
+        copy(() -> getClass().getResourceAsStream("/xml/xml-2.xml"), maven.resolve("conf").resolve("settings.xml"));
+        Path repo = Files.createDirectories(FS.getPath("/path/to/local/repo"));
+        Path older = createLibrary(repo, GROUP, ARTIFACT, "1.0.0-SNAPSHOT", ".jar", LocalDateTime.now());
+        Path jar = Files.createFile(older.resolveSibling(ARTIFACT + "-1.0.0-20180301.120000-2.jar"));
+        Files.setLastModifiedTime(jar, FileTime.from(LocalDateTime.now().minusDays(1).toInstant(ZoneOffset.UTC)));
+        writeMetadata(jar, "20180301120000", "    <snapshot><timestamp>20180301.120000</timestamp><buildNumber>2</buildNumber></snapshot>\n");
+        assertThat(MavenUtils.findLibrary(GROUP, ARTIFACT, "1.0.0", ".jar", true)).isNotEmpty().contains(jar);
+    }
 }
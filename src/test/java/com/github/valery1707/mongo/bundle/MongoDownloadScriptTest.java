@@ -0,0 +1,145 @@
+package com.github.valery1707.mongo.bundle;
+
+import com.sun.net.httpserver.HttpServer;
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Build script of bundle against local HTTP stand-in of download server.
+ */
+public class MongoDownloadScriptTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IDownloadConfig config = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).build();
+    private final Distribution distribution = new Distribution(Version.Main.PRODUCTION, Platform.Linux, BitSize.B64);
+    private final String path = config.getPackageResolver().getPath(distribution);
+    private final byte[] archive = "content of distribution archive".getBytes(UTF_8);
+    private final String sha256 = Digests.hex(Digests.create(Digests.SHA_256).digest(archive));
+
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private volatile String published = sha256;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String requested = exchange.getRequestURI().getPath().substring(1);
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            byte[] content = null;
+            int code = 200;
+            if (requested.equals(path)) {
+                content = archive;
+                if (range != null) {
+                    ranges.add(range);
+                    int offset = Integer.parseInt(range.replaceFirst("^bytes=(\\d+)-$", "$1"));
+                    content = Arrays.copyOfRange(archive, offset, archive.length);
+                    code = 206;
+                }
+            } else if (requested.equals(path + Digests.SHA_256_SUFFIX)) {
+                content = Digests.checksumLine(published, path).getBytes(UTF_8);
+            }
+            exchange.sendResponseHeaders(content != null ? code : 404, content != null ? content.length : -1);
+            try (
+                    OutputStream output = exchange.getResponseBody()
+            ) {
+                if (content != null) {
+                    output.write(content);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String serverUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    private void run(File root, String downloadPath) throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("mongo.version", "PRODUCTION");
+        properties.put("bundle.root", root.getAbsolutePath());
+        properties.put("mongo.download.threads", "2");
+        properties.put("mongo.download.path", downloadPath);
+        new GroovyShell(new Binding(singletonMap("properties", properties)))
+                .evaluate(new File("src/main/script/mongo-download.groovy"));
+    }
+
+    private Path target(File root) {
+        return root.toPath().resolve(BundleExtractor.entryName(config, distribution));
+    }
+
+    @Test
+    public void testDownload_resume() throws IOException {
+        File root = folder.newFolder();
+        Path target = target(root);
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Files.createDirectories(part.getParent());
+        Files.write(part, Arrays.copyOf(archive, 10));
+        run(root, serverUrl());
+        assertThat(ranges).containsExactly("bytes=10-");
+        assertThat(Files.readAllBytes(target)).isEqualTo(archive);
+        assertThat(part).doesNotExist();
+        assertThat(target.resolveSibling(target.getFileName() + Digests.SHA_256_SUFFIX)).exists();
+        assertThat(BundleCache.digest(target)).hasValue(sha256);
+    }
+
+    @Test
+    public void testDownload_checksumMismatch() throws IOException {
+        published = "0000";
+        File root = folder.newFolder();
+        Path target = target(root);
+        run(root, serverUrl());
+        assertThat(target).doesNotExist();
+        assertThat(target.resolveSibling(target.getFileName() + ".part")).doesNotExist();
+    }
+
+    @Test
+    public void testDownload_fileMirror() throws IOException {
+        Path mirror = folder.newFolder("mirror").toPath();
+        Files.createDirectories(mirror.resolve(path).getParent());
+        Files.write(mirror.resolve(path), archive);
+        Files.write(mirror.resolve(path + Digests.SHA_256_SUFFIX), Digests.checksumLine(sha256, path).getBytes(UTF_8));
+        File root = folder.newFolder();
+        Path target = target(root);
+        run(root, mirror.toUri().toString());
+        assertThat(Files.readAllBytes(target)).isEqualTo(archive);
+        assertThat(BundleCache.digest(target)).hasValue(sha256);
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.valery1707.mongo.bundle;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SharedMongodTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+    private final List<ServerSocket> servers = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() throws IOException {
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+    }
+
+    /**
+     * Fake mongod: records {@code <command> <database>} of every query and answers {@code ok: 1}, stops on shutdown.
+     */
+    private void serve(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        servers.add(server);
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (
+                        Socket socket = server.accept();
+                ) {
+                    DataInputStream input = new DataInputStream(socket.getInputStream());
+                    byte[] length = new byte[4];
+                    input.readFully(length);
+                    ByteBuffer message = ByteBuffer.allocate(ByteBuffer.wrap(length).order(ByteOrder.LITTLE_ENDIAN).getInt()).order(ByteOrder.LITTLE_ENDIAN);
+                    message.put(length);
+                    input.readFully(message.array(), 4, message.capacity() - 4);
+                    int position = 20;
+                    while (message.get(position) != 0) {
+                        position++;
+                    }
+                    String collection = new String(message.array(), 20, position - 20, UTF_8);
+                    int name = position + 1 + 8 + 4 + 1;
+                    position = name;
+                    while (message.get(position) != 0) {
+                        position++;
+                    }
+                    String command = new String(message.array(), name, position - name, UTF_8);
+                    commands.add(command + " " + collection.substring(0, collection.indexOf('.')));
+                    if (command.equals("shutdown")) {
+                        server.close();
+                        continue;
+                    }
+                    ByteBuffer reply = ByteBuffer.allocate(36 + 17).order(ByteOrder.LITTLE_ENDIAN);
+                    reply.putInt(reply.capacity()).putInt(1).putInt(message.getInt(4)).putInt(1);
+                    reply.putInt(0).putLong(0).putInt(0).putInt(1);
+                    reply.putInt(17).put((byte) 0x01).put("ok".getBytes(UTF_8)).put((byte) 0).putDouble(1).put((byte) 0);
+                    socket.getOutputStream().write(reply.array());
+                } catch (IOException e) {
+                    //Server is closed
+                }
+            }
+        }, "fake-mongod-" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Test
+    public void testAcquire() throws Exception {
+        AtomicInteger launches = new AtomicInteger();
+        SharedMongod shared = new SharedMongod(folder.getRoot().toPath(), 0, (distribution, port, directory, args) -> {
+            launches.incrementAndGet();
+            assertThat(directory.resolve("data")).isDirectory();
+            serve(port);
+        }, false);
+        String firstDatabase;
+        try (
+                SharedMongod.Lease first = shared.acquire(Version.Main.PRODUCTION);
+                SharedMongod.Lease second = shared.acquire(Version.Main.PRODUCTION);
+        ) {
+            firstDatabase = first.getDatabase();
+            assertThat(launches).hasValue(1);
+            assertThat(second.getPort()).isEqualTo(first.getPort());
+            assertThat(second.getDatabase()).isNotEqualTo(first.getDatabase()).startsWith("test_");
+            assertThat(first.getUri()).isEqualTo("mongodb://" + first.getHost() + ":" + first.getPort() + "/" + first.getDatabase());
+            //Leased instance is not idle
+            assertThat(shared.sweep()).isTrue();
+            assertThat(commands).doesNotContain("shutdown admin");
+        }
+        assertThat(commands).contains("dropDatabase " + firstDatabase);
+        Thread.sleep(10);
+        assertThat(shared.sweep()).isFalse();
+        assertThat(commands).endsWith("shutdown admin");
+        //Stopped instance is started again
+        try (
+                SharedMongod.Lease lease = shared.acquire(Version.Main.PRODUCTION);
+        ) {
+            assertThat(launches).hasValue(2);
+            assertThat(lease.getDatabase()).isNotEqualTo(firstDatabase);
+        }
+    }
+
+    @Test
+    public void testSweep_expiredLease() throws IOException {
+        Path root = folder.getRoot().toPath();
+        int port = Network.getFreeServerPort(InetAddress.getLoopbackAddress());
+        serve(port);
+        long now = System.currentTimeMillis();
+        Properties registry = new Properties();
+        registry.setProperty("instance.key", port + " " + now);
+        //Owner of lease is gone without release
+        registry.setProperty("lease.expired", "key test_expired " + (now - SharedMongod.LEASE_TIMEOUT_MILLIS - 1_000));
+        registry.setProperty("lease.alive", "key test_alive " + now);
+        try (
+                OutputStream output = Files.newOutputStream(root.resolve("registry.properties"));
+        ) {
+            registry.store(output, null);
+        }
+        SharedMongod shared = new SharedMongod(root, 60_000, (distribution, launched, directory, args) -> {
+            throw new IllegalStateException("Instance must not be started");
+        }, false);
+        //Instance is still leased
+        assertThat(shared.sweep()).isTrue();
+        assertThat(commands).containsExactly("dropDatabase test_expired");
+        Properties swept = new Properties();
+        try (
+                InputStream input = Files.newInputStream(root.resolve("registry.properties"));
+        ) {
+            swept.load(input);
+        }
+        assertThat(swept.stringPropertyNames()).contains("instance.key", "lease.alive").doesNotContain("lease.expired");
+    }
+
+    @Test
+    public void testCommand_failed() throws IOException {
+        int port;
+        try (
+                ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ) {
+            port = silent.getLocalPort();
+            assertThat(MongoWire.ping(port, 500)).isFalse();
+        }
+        assertThat(MongoWire.ping(port, 500)).isFalse();
+        ByteBuffer reply = ByteBuffer.wrap(MongoWire.document(singletonMap("errmsg", "not master"))).order(ByteOrder.LITTLE_ENDIAN);
+        assertThatThrownBy(() -> MongoWire.checkOk(reply, port))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("not master");
+    }
+}
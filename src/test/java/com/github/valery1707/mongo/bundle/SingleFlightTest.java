@@ -0,0 +1,91 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+    @Test
+    public void testExecute_shared() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger counter = new AtomicInteger();
+        int count = 4;
+        CountDownLatch entered = new CountDownLatch(count);
+        Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        SingleFlight.Loader<Integer> loader = () -> {
+            try {
+                assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            //Other callers have nothing to wait for except shared execution
+            while (callers.stream().anyMatch(caller -> caller != Thread.currentThread() && caller.getState() != Thread.State.WAITING)) {
+                Thread.yield();
+            }
+            return counter.incrementAndGet();
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                results.add(executor.submit(() -> {
+                    callers.add(Thread.currentThread());
+                    entered.countDown();
+                    return flight.execute("key", loader);
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(counter).hasValue(1);
+        //Finished execution is not reused
+        assertThat(flight.execute("key", counter::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    public void testExecute_otherKeyIsNotBlocked() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> slow = executor.submit(() -> flight.execute("slow", () -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return 1;
+            }));
+            assertThat(flight.execute("fast", () -> 2)).isEqualTo(2);
+            release.countDown();
+            assertThat(slow.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecute_failureAndRetry() throws IOException {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        assertThatThrownBy(() -> flight.execute("key", () -> {
+            throw new IOException("test");
+        })).isInstanceOf(IOException.class).hasMessage("test");
+        assertThat(flight.execute("key", () -> 1)).isEqualTo(1);
+    }
+}
@@ -10,6 +10,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.function.Supplier;
 
 import static com.github.valery1707.mongo.bundle.XmlUtils.extractFromXml;
@@ -45,4 +47,17 @@ public class XmlUtilsTest {
         assertThat(extractFromXml(extract("/xml/xml-1.xml"), "/settings/servers/server/id")).isNotEmpty().contains("siteServer");
         assertThat(extractFromXml(extract("/xml/xml-2.xml"), "/settings/localRepository")).isNotEmpty().contains("/path/to/local/repo");
     }
+
+    @Test
+    public void testExtractFromXml_Multiple() throws IOException {
+        Map<String, String> found = extractFromXml(extract("/xml/xml-1.xml"), Arrays.asList(
+                "/settings/servers/server/id",
+                "/settings/servers/server/privateKey",
+                "/settings/localRepository"
+        ));
+        assertThat(found)
+                .containsEntry("/settings/servers/server/id", "siteServer")
+                .containsEntry("/settings/servers/server/privateKey", "/path/to/private/key")
+                .doesNotContainKey("/settings/localRepository");
+    }
 }
@@ -0,0 +1,90 @@
+package com.github.valery1707.mongo.bundle;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZipCentralDirectoryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Test
+    public void testRead() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("dir/", "");
+        content.put("dir/file1.txt", "file1");
+        content.put("file2.txt", "file2");
+        File zip = ZipUtilsTest.writeZip(folder.newFile(), content, ZipEntry.STORED);
+        try (
+                FileChannel channel = FileChannel.open(zip.toPath(), READ);
+        ) {
+            Map<String, ZipCentralDirectory.Entry> entries = ZipCentralDirectory.read(channel);
+            assertThat(entries).containsOnlyKeys("dir/", "dir/file1.txt", "file2.txt");
+            ZipCentralDirectory.Entry entry = entries.get("file2.txt");
+            assertThat(entry.isStored()).isTrue();
+            assertThat(entry.getSize()).isEqualTo(5);
+            assertThat(entry.getCompressedSize()).isEqualTo(5);
+            ByteBuffer data = ByteBuffer.allocate(5);
+            channel.read(data, ZipCentralDirectory.dataOffset(channel, entry));
+            assertThat(new String(data.array(), UTF_8)).isEqualTo("file2");
+        }
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Test
+    public void testRead_zip64() throws IOException {
+        //More than 0xFFFF entries forces zip64 end of central directory
+        Map<String, String> content = new LinkedHashMap<>();
+        for (int i = 0; i < 0x10010; i++) {
+            content.put("file" + i, "");
+        }
+        content.put("last.txt", "last");
+        File zip = ZipUtilsTest.writeZip(folder.newFile(), content, ZipEntry.STORED);
+        try (
+                FileChannel channel = FileChannel.open(zip.toPath(), READ);
+        ) {
+            Map<String, ZipCentralDirectory.Entry> entries = ZipCentralDirectory.read(channel);
+            assertThat(entries).hasSize(content.size());
+            ByteBuffer data = ByteBuffer.allocate(4);
+            channel.read(data, ZipCentralDirectory.dataOffset(channel, entries.get("last.txt")));
+            assertThat(new String(data.array(), UTF_8)).isEqualTo("last");
+        }
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    @Test
+    public void testRead_memoized() throws IOException {
+        File zip = ZipUtilsTest.writeZip(folder.newFile(), singletonMap("file1.txt", "file1"), ZipEntry.STORED);
+        try (
+                FileChannel channel = FileChannel.open(zip.toPath(), READ);
+        ) {
+            Map<String, ZipCentralDirectory.Entry> entries = ZipCentralDirectory.read(zip.toPath(), channel);
+            assertThat(entries).containsOnlyKeys("file1.txt");
+            assertThat(ZipCentralDirectory.read(zip.toPath(), channel)).isSameAs(entries);
+        }
+        //Rewritten archive is read again
+        ZipUtilsTest.writeZip(zip, singletonMap("file2.txt", "file2"), ZipEntry.STORED);
+        Files.setLastModifiedTime(zip.toPath(), FileTime.fromMillis(Files.getLastModifiedTime(zip.toPath()).toMillis() + 10_000));
+        try (
+                FileChannel channel = FileChannel.open(zip.toPath(), READ);
+        ) {
+            assertThat(ZipCentralDirectory.read(zip.toPath(), channel)).containsOnlyKeys("file2.txt");
+        }
+    }
+}
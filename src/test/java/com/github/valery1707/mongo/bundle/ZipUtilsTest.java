@@ -1,5 +1,6 @@
 package com.github.valery1707.mongo.bundle;
 
+import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
@@ -9,27 +10,50 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class ZipUtilsTest {
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
 
-    @SuppressWarnings("UnnecessarySemicolon")
     private File writeZip(Map<String, String> content) throws IOException {
-        File file = folder.newFile("temp.zip");
+        return writeZip(content, ZipEntry.DEFLATED);
+    }
+
+    @SuppressWarnings("UnnecessarySemicolon")
+    static File writeZip(File file, Map<String, String> content, int method) throws IOException {
         try (
                 OutputStream stream = new FileOutputStream(file);
                 ZipOutputStream zip = new ZipOutputStream(stream);
         ) {
             for (Map.Entry<String, String> entry : content.entrySet()) {
                 ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    byte[] bytes = entry.getValue().getBytes(UTF_8);
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    zipEntry.setSize(bytes.length);
+                    zipEntry.setCrc(crc.getValue());
+                }
                 zip.putNextEntry(zipEntry);
                 IOUtils.write(entry.getValue(), zip, UTF_8);
                 zip.closeEntry();
@@ -38,6 +62,10 @@ public class ZipUtilsTest {
         return file;
     }
 
+    private File writeZip(Map<String, String> content, int method) throws IOException {
+        return writeZip(folder.newFile("temp.zip"), content, method);
+    }
+
     @Test
     public void testExtract() throws IOException {
         Map<String, String> content = new LinkedHashMap<>();
@@ -52,4 +80,199 @@ public class ZipUtilsTest {
         );
         assertThat(target).exists().hasContent("file2");
     }
+
+    @Test
+    public void testExtract_randomAccess() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("dir/file2.txt", "file2");
+        content.put("file3.txt", "file3");
+        File zip = writeZip(content);
+        Map<String, Path> targets = new HashMap<>();
+        targets.put("file3.txt", folder.newFile().toPath());
+        targets.put("dir/file2.txt", folder.newFile().toPath());
+        ZipUtils.extract(zip.toPath(), targets);
+        assertThat(targets.get("file3.txt")).exists().hasContent("file3");
+        assertThat(targets.get("dir/file2.txt")).exists().hasContent("file2");
+    }
+
+    @Test
+    public void testExtract_notFound() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        File zip = writeZip(content);
+        assertThatThrownBy(() -> ZipUtils.extract(zip.toPath(), singletonMap("file2.txt", folder.newFile().toPath())))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("file2.txt");
+    }
+
+    @Test
+    public void testExtract_stream() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2");
+        File zip = writeZip(content);
+        try (
+                FileSystem fileSystem = MemoryFileSystemBuilder.newLinux().build()
+        ) {
+            Path root = Files.createDirectories(fileSystem.getPath("tmp", "root"));
+            Path source = Files.copy(zip.toPath(), root.resolve("temp.zip"));
+            Path target = root.resolve("file1.txt");
+            ZipUtils.extract(source, singletonMap("file1.txt", target));
+            assertThat(new String(Files.readAllBytes(target), UTF_8)).isEqualTo("file1");
+        }
+    }
+
+    @Test
+    public void testExtract_stored() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2 with longer content");
+        File zip = writeZip(content, ZipEntry.STORED);
+        Path target = folder.newFile().toPath();
+        ZipUtils.extract(zip.toPath(), singletonMap("file2.txt", target));
+        assertThat(target).exists().hasContent("file2 with longer content");
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2 with longer content");
+        for (int method : new int[]{ZipEntry.STORED, ZipEntry.DEFLATED}) {
+            File zip = writeZip(folder.newFile(), content, method);
+            ByteBuffer buffer = ZipUtils.read(zip.toPath(), "file2.txt", BufferPool::acquire);
+            assertThat(buffer.isDirect()).isTrue();
+            assertThat(UTF_8.decode(buffer).toString()).isEqualTo("file2 with longer content");
+            BufferPool.release(buffer);
+            //Released buffer with larger capacity is limited to size of next entry
+            ByteBuffer reused = ZipUtils.read(zip.toPath(), "file1.txt", BufferPool::acquire);
+            assertThat(UTF_8.decode(reused).toString()).isEqualTo("file1");
+            BufferPool.release(reused);
+            assertThatThrownBy(() -> ZipUtils.read(zip.toPath(), "file3.txt", ByteBuffer::allocate))
+                    .isInstanceOf(NoSuchFileException.class);
+        }
+    }
+
+    @Test
+    public void testRead_releaseOnFailure() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("content of file ").append(i).append('\n');
+        }
+        Path zip = writeZip(folder.newFile(), singletonMap("file.txt", text.toString()), ZipEntry.DEFLATED).toPath();
+        //Corrupt compressed data, central directory stays intact
+        byte[] bytes = Files.readAllBytes(zip);
+        for (int i = 40; i < 80; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        Files.write(zip, bytes);
+        List<ByteBuffer> allocated = new ArrayList<>();
+        List<ByteBuffer> released = new ArrayList<>();
+        assertThatThrownBy(() -> ZipUtils.read(zip, "file.txt", size -> {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            allocated.add(buffer);
+            return buffer;
+        }, released::add)).isInstanceOf(IOException.class);
+        assertThat(allocated).hasSize(1);
+        assertThat(released).containsExactlyElementsOf(allocated);
+    }
+
+    @Test
+    public void testRead_releaseOnFailure_otherFileSystem() throws IOException {
+        try (
+                FileSystem fileSystem = MemoryFileSystemBuilder.newLinux().build()
+        ) {
+            Path zip = fileSystem.getPath("/bundle.zip");
+            Files.copy(writeZip(folder.newFile(), singletonMap("file.txt", "content"), ZipEntry.DEFLATED).toPath(), zip);
+            List<ByteBuffer> released = new ArrayList<>();
+            //Allocator returns too small buffer
+            ByteBuffer small = ByteBuffer.allocate(1);
+            assertThatThrownBy(() -> ZipUtils.read(zip, "file.txt", size -> small, released::add))
+                    .isInstanceOf(BufferOverflowException.class);
+            assertThat(released).containsExactly(small);
+        }
+    }
+
+    @Test
+    public void testExtractConcurrently() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            content.put("file" + i + ".txt", "content of file " + i);
+        }
+        Map<String, Path> targets = new LinkedHashMap<>();
+        for (int i = 19; i >= 0; i -= 2) {
+            targets.put("file" + i + ".txt", folder.getRoot().toPath().resolve("target" + i + ".txt"));
+        }
+        for (int method : new int[]{ZipEntry.STORED, ZipEntry.DEFLATED}) {
+            File zip = writeZip(folder.newFile("temp" + method + ".zip"), content, method);
+            Map<String, ZipUtils.Extracted> results = ZipUtils.extractConcurrently(zip.toPath(), targets, 4);
+            assertThat(results.keySet()).containsExactlyElementsOf(targets.keySet());
+            assertThat(results.values()).allMatch(ZipUtils.Extracted::isSuccess);
+            for (int i = 19; i >= 0; i -= 2) {
+                assertThat(targets.get("file" + i + ".txt")).hasContent("content of file " + i);
+                assertThat(results.get("file" + i + ".txt").getSize()).isEqualTo(("content of file " + i).length());
+            }
+        }
+    }
+
+    @Test
+    public void testExtractConcurrently_failures() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2");
+        File zip = writeZip(content, ZipEntry.STORED);
+        Map<String, Path> targets = new LinkedHashMap<>();
+        targets.put("file1.txt", folder.getRoot().toPath().resolve("absent").resolve("file1.txt"));
+        targets.put("file2.txt", folder.getRoot().toPath().resolve("file2.txt"));
+        targets.put("file3.txt", folder.getRoot().toPath().resolve("file3.txt"));
+        Map<String, ZipUtils.Extracted> results = ZipUtils.extractConcurrently(zip.toPath(), targets, 2);
+        assertThat(results.get("file1.txt").isSuccess()).isFalse();
+        assertThat(results.get("file2.txt").isSuccess()).isTrue();
+        assertThat(results.get("file2.txt").getTarget()).hasContent("file2");
+        assertThat(results.get("file3.txt").getFailure()).hasValueSatisfying(e -> assertThat(e).hasMessageContaining("file3.txt"));
+    }
+
+    @Test
+    public void testExtractConcurrently_stream() throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2");
+        File zip = writeZip(content);
+        try (
+                FileSystem fileSystem = MemoryFileSystemBuilder.newLinux().build()
+        ) {
+            Path root = Files.createDirectories(fileSystem.getPath("tmp", "root"));
+            Path source = Files.copy(zip.toPath(), root.resolve("temp.zip"));
+            Map<String, Path> targets = new LinkedHashMap<>();
+            targets.put("file3.txt", root.resolve("file3.txt"));
+            targets.put("file2.txt", root.resolve("file2.txt"));
+            Map<String, ZipUtils.Extracted> results = ZipUtils.extractConcurrently(source, targets, 2);
+            assertThat(results.keySet()).containsExactly("file3.txt", "file2.txt");
+            assertThat(results.get("file3.txt").isSuccess()).isFalse();
+            assertThat(results.get("file2.txt").isSuccess()).isTrue();
+            assertThat(new String(Files.readAllBytes(root.resolve("file2.txt")), UTF_8)).isEqualTo("file2");
+        }
+    }
+
+    @Test
+    public void testExtract_verified() throws IOException {
+        String hash = Digests.hex(Digests.create(Digests.SHA_256).digest("file2".getBytes(UTF_8)));
+        Map<String, String> content = new LinkedHashMap<>();
+        content.put("file1.txt", "file1");
+        content.put("file2.txt", "file2");
+        for (int method : new int[]{ZipEntry.STORED, ZipEntry.DEFLATED}) {
+            File zip = writeZip(folder.newFile(), content, method);
+            Path target = folder.newFile().toPath();
+            assertThat(ZipUtils.extract(zip.toPath(), "file2.txt", target, hash)).isEqualTo(hash);
+            assertThat(target).hasContent("file2");
+            assertThat(ZipUtils.extract(zip.toPath(), "file2.txt", target, null)).isEqualTo(hash);
+            assertThatThrownBy(() -> ZipUtils.extract(zip.toPath(), "file1.txt", target, hash))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("SHA-256 mismatch")
+                    .hasMessageContaining("file1.txt");
+            assertThatThrownBy(() -> ZipUtils.extract(zip.toPath(), "file3.txt", target, hash))
+                    .isInstanceOf(NoSuchFileException.class);
+        }
+    }
 }